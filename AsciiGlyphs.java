@@ -0,0 +1,137 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The pictures of the ASCII characters used by Picture.convertToAscii,
+ * 	packed into one array with the characters stacked one below the other.
+ * 
+ * 	The characters are loaded from the class path the first time they are
+ * 	needed, exactly once, by the class initialization of a holder class.
+ * 	After that the registry is never modified, so any number of threads can
+ * 	share it without locking.
+ */
+public final class AsciiGlyphs
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The width of every character, in pixels. */
+	public static final int WIDTH = 10;
+
+	/** The height of every character, in pixels. */
+	public static final int HEIGHT = 20;
+
+	/**
+	 * The files of the characters, from the darkest (#) to the lightest
+	 * 	(space).
+	 */
+	private static final String[] FILE_NAMES = { "hash.bmp", "at.bmp",
+		"ampersand.bmp", "dollar.bmp", "percent.bmp", "bar.bmp",
+		"exclamation.bmp", "semicolon.bmp", "colon.bmp", "apostrophe.bmp",
+		"grave.bmp", "dot.bmp", "space.bmp" };
+
+	/** The number of characters. */
+	public static final int COUNT = FILE_NAMES.length;
+
+	/** The index of the character used for each gray value. */
+	private final int[] glyphForGray = new int[256];
+
+	/**
+	 * The pixels of every character, without alpha, in the order of
+	 * 	FILE_NAMES.
+	 */
+	private final int[] atlas = new int[COUNT * WIDTH * HEIGHT];
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * Loads every character from the class path.
+	 * 
+	 * @throws IOException If a character is missing or cannot be read.
+	 */
+	private AsciiGlyphs() throws IOException {
+		for (int gray = 0; gray < glyphForGray.length; gray++)
+			glyphForGray[gray] = Math.min(gray / 19, COUNT - 1);
+
+		for (int glyph = 0; glyph < COUNT; glyph++)
+		{
+			BufferedImage image = read(FILE_NAMES[glyph]);
+			if (image.getWidth() != WIDTH || image.getHeight() != HEIGHT)
+				throw new IOException(FILE_NAMES[glyph] + " is " +
+						image.getWidth() + "x" + image.getHeight() +
+						", not " + WIDTH + "x" + HEIGHT);
+
+			int offset = glyph * WIDTH * HEIGHT;
+			image.getRGB(0, 0, WIDTH, HEIGHT, atlas, offset, WIDTH);
+			for (int i = offset; i < offset + WIDTH * HEIGHT; i++)
+				atlas[i] &= 0x00ffffff;
+		}
+	}
+
+	/**
+	 * Holds the only registry; the JVM initializes it, once, on first use.
+	 */
+	private static class Holder
+	{
+		static final AsciiGlyphs INSTANCE = load();
+
+		private static AsciiGlyphs load() {
+			try {
+				return new AsciiGlyphs();
+			} catch (IOException ex) {
+				throw new IllegalStateException(
+						"Could not load the ASCII characters", ex);
+			}
+		}
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * @return The registry of characters, loading it if needed.
+	 */
+	public static AsciiGlyphs getInstance() { return Holder.INSTANCE; }
+
+	/**
+	 * @param grayValue A gray value, from 0 to 255.
+	 * 
+	 * @return The index of the character that stands for that gray value.
+	 */
+	public int glyphForGray(int grayValue) {
+		return glyphForGray[grayValue];
+	}
+
+	/**
+	 * Copies the start of a scanline of a character into a raster.
+	 * 
+	 * @param glyph The index of the character.
+	 * @param row The scanline of the character, from 0 to HEIGHT - 1.
+	 * @param target The raster to copy to.
+	 * @param offset The index in the raster of the first pixel to copy to.
+	 * @param length The number of pixels to copy, at most WIDTH.
+	 */
+	public void copyRow(int glyph, int row, int[] target, int offset,
+			int length) {
+		System.arraycopy(atlas, (glyph * HEIGHT + row) * WIDTH, target,
+				offset, length);
+	}
+
+	/**
+	 * Reads an image from the class path.
+	 */
+	private static BufferedImage read(String name) throws IOException {
+		try (InputStream in = AsciiGlyphs.class.getResourceAsStream(name)) {
+			if (in == null)
+				throw new IOException(name + " is not on the class path");
+
+			BufferedImage image = ImageIO.read(in);
+			if (image == null)
+				throw new IOException(name + " is not an image");
+			return image;
+		}
+	}
+
+} // End of AsciiGlyphs class.
@@ -0,0 +1,405 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Renders a picture as ASCII art, like Picture.convertToAscii, but with a
+ * 	configurable cell size and ramp of characters, and as plain text, text
+ * 	colored with ANSI escape codes, or a bitmap.
+ * 
+ * 	The picture is read one row of cells at a time, straight from its
+ * 	raster, and each row is handed out as soon as it is computed. Only the
+ * 	sums of the current row of cells are kept, so even very large pictures
+ * 	are rendered without a grayscale copy.
+ * 
+ * 	With the default settings (10x20 cells and the 13 characters of
+ * 	convertToAscii), the bitmap is exactly the one convertToAscii makes.
+ */
+public class AsciiRenderer
+{
+
+	/**
+	 * How text is written.
+	 */
+	public enum Mode
+	{
+		/** Only the characters. */
+		TEXT,
+
+		/**
+		 * Every character is colored with the average color of its cell,
+		 * 	using 24-bit ANSI escape codes.
+		 */
+		ANSI
+	}
+
+	/**
+	 * Receives the rows of pixels of a bitmap as they are rendered.
+	 */
+	public interface BitmapSink
+	{
+		/**
+		 * Receives a band of rows. The array is reused for the next band,
+		 * 	so it must be copied if it is kept.
+		 * 
+		 * @param startY The row of the picture where the band starts.
+		 * @param pixels The pixels of the band, row by row, as color values
+		 * 	without alpha.
+		 * @param width The width of every row.
+		 * @param rows The number of rows in the band.
+		 */
+		void rows(int startY, int[] pixels, int width, int rows);
+	}
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The characters of convertToAscii, from the darkest to the lightest. */
+	public static final String DEFAULT_RAMP = "#@&$%|!;:'`. ";
+
+	/**
+	 * Gray values from 0 to RAMP_RANGE - 1 are spread evenly over the ramp;
+	 * 	lighter ones use its last character. With the 13 characters of the
+	 * 	default ramp, this gives the gray / 19 of convertToAscii.
+	 */
+	private static final int RAMP_RANGE = 247;
+
+	/** The escape code that resets the color of ANSI text. */
+	private static final String ANSI_RESET = "\u001b[0m";
+
+	/** The width of a cell, in pixels. */
+	private int cellWidth = AsciiGlyphs.WIDTH;
+
+	/** The height of a cell, in pixels. */
+	private int cellHeight = AsciiGlyphs.HEIGHT;
+
+	/** The characters used, from the darkest to the lightest. */
+	private String ramp = DEFAULT_RAMP;
+
+	/** The index in the ramp of the character for each gray value. */
+	private int[] rampForGray = rampTable(DEFAULT_RAMP.length());
+
+	/** How text is written. */
+	private Mode mode = Mode.TEXT;
+
+	/**
+	 * The bitmaps of the ramp characters at the cell size, drawn when
+	 * 	first needed; null if the default characters are used.
+	 */
+	private int[] glyphs;
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * @return The width of a cell, in pixels.
+	 */
+	public int getCellWidth() { return cellWidth; }
+
+	/**
+	 * @return The height of a cell, in pixels.
+	 */
+	public int getCellHeight() { return cellHeight; }
+
+	/**
+	 * Sets the size of the area of the picture that each character stands
+	 * 	for.
+	 * 
+	 * @param width The width of a cell, in pixels; at least 1.
+	 * @param height The height of a cell, in pixels; at least 1.
+	 * 
+	 * @return This renderer.
+	 */
+	public AsciiRenderer setCellSize(int width, int height) {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("Invalid cell size: " + width +
+					"x" + height);
+
+		this.cellWidth = width;
+		this.cellHeight = height;
+		this.glyphs = null;
+		return this;
+	}
+
+	/**
+	 * @return The characters used, from the darkest to the lightest.
+	 */
+	public String getRamp() { return ramp; }
+
+	/**
+	 * Sets the characters used, from the one standing for the darkest cells
+	 * 	to the one standing for the lightest.
+	 * 
+	 * @param ramp The characters to use; at least one.
+	 * 
+	 * @return This renderer.
+	 */
+	public AsciiRenderer setRamp(String ramp) {
+		if (ramp.isEmpty())
+			throw new IllegalArgumentException("The ramp is empty");
+
+		this.ramp = ramp;
+		this.rampForGray = rampTable(ramp.length());
+		this.glyphs = null;
+		return this;
+	}
+
+	/**
+	 * @return How text is written.
+	 */
+	public Mode getMode() { return mode; }
+
+	/**
+	 * Sets how text is written by render.
+	 * 
+	 * @param mode The mode to use.
+	 * 
+	 * @return This renderer.
+	 */
+	public AsciiRenderer setMode(Mode mode) {
+		if (mode == null)
+			throw new NullPointerException("The mode is null");
+
+		this.mode = mode;
+		return this;
+	}
+
+	/**
+	 * Writes a picture as text, one line per row of cells. Each line is
+	 * 	written as soon as it is computed.
+	 * 
+	 * @param source The picture to render.
+	 * @param out Where to write the text.
+	 * 
+	 * @throws IOException If the text cannot be written.
+	 */
+	public void render(Picture source, Appendable out) throws IOException {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int columns = (width + cellWidth - 1) / cellWidth;
+		int[][] means = new int[4][columns];
+		StringBuilder line = new StringBuilder(columns *
+				(mode == Mode.ANSI ? 20 : 1) + 8);
+
+		for (int y = 0; y < height; y += cellHeight)
+		{
+			computeMeans(source, y, means);
+			line.setLength(0);
+
+			int lastColor = -1;
+			for (int column = 0; column < columns; column++)
+			{
+				if (mode == Mode.ANSI)
+				{
+					int color = Pixel.makeColor(0, means[1][column],
+							means[2][column], means[3][column]);
+					if (color != lastColor)
+					{
+						line.append("\u001b[38;2;").append(means[1][column])
+						.append(';').append(means[2][column]).append(';')
+						.append(means[3][column]).append('m');
+						lastColor = color;
+					}
+				}
+				line.append(ramp.charAt(rampForGray[means[0][column]]));
+			}
+			if (mode == Mode.ANSI)
+				line.append(ANSI_RESET);
+			line.append('\n');
+			out.append(line);
+		}
+	}
+
+	/**
+	 * @param source The picture to render.
+	 * 
+	 * @return The picture as text, one line per row of cells.
+	 */
+	public String renderToString(Picture source) {
+		StringBuilder text = new StringBuilder();
+		try {
+			render(source, text);
+		} catch (IOException ex) {
+			// A StringBuilder does not throw.
+			throw new IllegalStateException(ex);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Renders a picture as a bitmap of the same size, in which every cell
+	 * 	is replaced by the bitmap of its character. The bitmap is handed
+	 * 	out one row of cells at a time.
+	 * 
+	 * @param source The picture to render.
+	 * @param sink Where to send the rows of the bitmap.
+	 */
+	public void renderBitmap(Picture source, BitmapSink sink) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int columns = (width + cellWidth - 1) / cellWidth;
+		int[][] means = new int[4][columns];
+		int[] band = new int[width * cellHeight];
+		int[] bitmaps = getGlyphs();
+
+		for (int y = 0; y < height; y += cellHeight)
+		{
+			int rows = Math.min(cellHeight, height - y);
+			computeMeans(source, y, means);
+
+			for (int column = 0; column < columns; column++)
+			{
+				int x = column * cellWidth;
+				int length = Math.min(cellWidth, width - x);
+				int glyph = rampForGray[means[0][column]];
+				for (int row = 0; row < rows; row++)
+					System.arraycopy(bitmaps,
+							(glyph * cellHeight + row) * cellWidth, band,
+							row * width + x, length);
+			}
+			sink.rows(y, band, width, rows);
+		}
+	}
+
+	/**
+	 * @param source The picture to render.
+	 * 
+	 * @return A new Picture holding the bitmap of the picture.
+	 */
+	public Picture renderToPicture(Picture source) {
+		final Picture result = new Picture(source.getWidth(),
+				source.getHeight());
+		final int[] raster = result.getRasterData();
+		renderBitmap(source, (startY, pixels, width, rows) ->
+		System.arraycopy(pixels, 0, raster, startY * width, width * rows));
+		return result;
+	}
+
+	/**
+	 * Computes the average gray value, red, green, and blue of every cell
+	 * 	in the row of cells starting at row y. The gray value is the average
+	 * 	of the gray values of the pixels, as in convertToAscii.
+	 * 
+	 * @param source The picture to read.
+	 * @param y The first row of the cells.
+	 * @param means Four arrays, one entry per cell, which receive the
+	 * 	gray value, red, green, and blue of each cell.
+	 */
+	private void computeMeans(Picture source, int y, int[][] means) {
+		int width = source.getWidth();
+		int rows = Math.min(cellHeight, source.getHeight() - y);
+		int[] raster = source.getRasterForReading();
+
+		for (int column = 0, x = 0; x < width; column++, x += cellWidth)
+		{
+			int length = Math.min(cellWidth, width - x);
+			long gray = 0, red = 0, green = 0, blue = 0;
+			for (int row = y; row < y + rows; row++)
+			{
+				int start = row * width + x;
+				for (int i = start; i < start + length; i++)
+				{
+					int value = raster[i];
+					gray += Pixel.getAverage(value);
+					red += Pixel.getRed(value);
+					green += Pixel.getGreen(value);
+					blue += Pixel.getBlue(value);
+				}
+			}
+
+			int count = length * rows;
+			means[0][column] = (int) (gray / count);
+			means[1][column] = (int) (red / count);
+			means[2][column] = (int) (green / count);
+			means[3][column] = (int) (blue / count);
+		}
+	}
+
+	/**
+	 * @return The bitmaps of the ramp characters at the cell size, one
+	 * 	below the other.
+	 */
+	private int[] getGlyphs() {
+		if (glyphs == null)
+		{
+			if (cellWidth == AsciiGlyphs.WIDTH &&
+					cellHeight == AsciiGlyphs.HEIGHT &&
+					ramp.equals(DEFAULT_RAMP))
+				glyphs = defaultGlyphs();
+			else
+				glyphs = drawGlyphs();
+		}
+		return glyphs;
+	}
+
+	/**
+	 * @return The bitmaps used by convertToAscii.
+	 */
+	private static int[] defaultGlyphs() {
+		AsciiGlyphs registry = AsciiGlyphs.getInstance();
+		int[] result = new int[AsciiGlyphs.COUNT * AsciiGlyphs.WIDTH *
+		                       AsciiGlyphs.HEIGHT];
+		for (int glyph = 0; glyph < AsciiGlyphs.COUNT; glyph++)
+			for (int row = 0; row < AsciiGlyphs.HEIGHT; row++)
+				registry.copyRow(glyph, row, result,
+						(glyph * AsciiGlyphs.HEIGHT + row) * AsciiGlyphs.WIDTH,
+						AsciiGlyphs.WIDTH);
+		return result;
+	}
+
+	/**
+	 * @return The ramp characters drawn in black on white, in a monospaced
+	 * 	font that fits the cell.
+	 */
+	private int[] drawGlyphs() {
+		int size = cellWidth * cellHeight;
+		int[] result = new int[ramp.length() * size];
+		BufferedImage cell = new BufferedImage(cellWidth, cellHeight,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = cell.createGraphics();
+		try {
+			Font font = new Font(Font.MONOSPACED, Font.PLAIN, cellHeight);
+			FontMetrics metrics = graphics.getFontMetrics(font);
+			float scale = Math.min(1f, Math.min(
+					(float) cellWidth / Math.max(1, metrics.charWidth('W')),
+					(float) cellHeight / Math.max(1, metrics.getHeight())));
+			graphics.setFont(font.deriveFont(cellHeight * scale));
+			metrics = graphics.getFontMetrics();
+
+			for (int glyph = 0; glyph < ramp.length(); glyph++)
+			{
+				char character = ramp.charAt(glyph);
+				graphics.setColor(Color.white);
+				graphics.fillRect(0, 0, cellWidth, cellHeight);
+				graphics.setColor(Color.black);
+				graphics.drawString(String.valueOf(character),
+						(cellWidth - metrics.charWidth(character)) / 2,
+						(cellHeight - metrics.getHeight()) / 2 +
+						metrics.getAscent());
+
+				cell.getRGB(0, 0, cellWidth, cellHeight, result,
+						glyph * size, cellWidth);
+			}
+		} finally {
+			graphics.dispose();
+		}
+
+		for (int i = 0; i < result.length; i++)
+			result[i] &= 0x00ffffff;
+		return result;
+	}
+
+	/**
+	 * @param length The number of characters in the ramp.
+	 * 
+	 * @return The index in the ramp of the character for each gray value.
+	 */
+	private static int[] rampTable(int length) {
+		int[] table = new int[256];
+		for (int gray = 0; gray < table.length; gray++)
+			table[gray] = Math.min(gray * length / RAMP_RANGE, length - 1);
+		return table;
+	}
+
+} // End of AsciiRenderer class.
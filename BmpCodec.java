@@ -0,0 +1,600 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.UnaryOperator;
+
+/**
+ * Reads and writes uncompressed BMP files a band of rows at a time, so that
+ * 	pictures larger than the heap can be processed with bounded memory.
+ *
+ * 	Rows are read and written with positional I/O at their offset in the
+ * 	file. Rows can therefore be handled from top to bottom even though BMP
+ * 	files usually store them from the bottom up.
+ *
+ * 	The reader supports 8-bit palettized, 24-bit, and 32-bit BI_RGB files,
+ * 	stored either bottom-up or top-down. The writer always writes 24-bit
+ * 	bottom-up files, like the sample pictures.
+ */
+public final class BmpCodec
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The size of the file header. */
+	private static final int FILE_HEADER_SIZE = 14;
+
+	/** The size of the BITMAPINFOHEADER, the smallest header supported. */
+	private static final int INFO_HEADER_SIZE = 40;
+
+	/** The compression value of uncompressed files. */
+	private static final int BI_RGB = 0;
+
+	/** The resolution written to new files: 72 dots per inch. */
+	private static final int PIXELS_PER_METER = 2835;
+
+	/** The number of rows processed at once by transform, by default. */
+	public static final int DEFAULT_BAND_ROWS = 256;
+
+	/** The most bytes of rows read from or written to a file at once. */
+	private static final int MAX_CHUNK_BYTES = 16 << 20;
+
+	/////////////////////////////// Constructors //////////////////////////////
+
+	/**
+	 * This class only has static methods and nested classes.
+	 */
+	private BmpCodec() { }
+
+	//////////////////////////////// Methods //////////////////////////////////
+
+	/**
+	 * @param width The width of a row, in pixels.
+	 * @param bitsPerPixel The number of bits used by a pixel.
+	 *
+	 * @return The number of bytes used by a row in a BMP file, which is
+	 * 	padded to a multiple of 4.
+	 */
+	static int rowStride(int width, int bitsPerPixel) {
+		return (int) (((long) width * bitsPerPixel + 31) / 32 * 4);
+	}
+
+	/**
+	 * Applies a transform to a BMP file a band of rows at a time, writing
+	 * 	the result to another BMP file. Only one band (and its halo) is in
+	 * 	memory at once.
+	 *
+	 * 	The transform receives a Picture holding the band together with up
+	 * 	to halo rows above and below it, and must return a Picture of the
+	 * 	same size. Only the rows of the band are kept from its result. A
+	 * 	transform whose result for a row only depends on the rows at most
+	 * 	halo rows away (such as blur(halo), or showEdges with a halo of 1)
+	 * 	gives the same result as when applied to the whole picture.
+	 *
+	 * @param input The BMP file to read.
+	 * @param output The BMP file to write. It must not be the input.
+	 * @param bandRows The number of rows in a band; at least 1.
+	 * @param halo The number of extra rows needed above and below a band.
+	 * @param transform The transform to apply to each band.
+	 *
+	 * @throws IOException If a file cannot be read or written, or the input
+	 * 	is not a supported BMP file.
+	 */
+	public static void transform(File input, File output, int bandRows,
+			int halo, UnaryOperator<Picture> transform) throws IOException {
+		if (bandRows < 1 || halo < 0)
+			throw new IllegalArgumentException("Invalid band of " + bandRows +
+					" rows with a halo of " + halo);
+
+		try (Reader reader = new Reader(input);
+				Writer writer = new Writer(output, reader.getWidth(),
+						reader.getHeight()))
+		{
+			int width = reader.getWidth();
+			int height = reader.getHeight();
+
+			for (int startY = 0; startY < height; startY += bandRows)
+			{
+				int endY = Math.min(height, startY + bandRows);
+				int haloStartY = Math.max(0, startY - halo);
+				int haloEndY = Math.min(height, endY + halo);
+
+				Picture band = new Picture(width, haloEndY - haloStartY);
+				reader.readRows(haloStartY, haloEndY - haloStartY,
+						band.getRasterData(), 0);
+
+				Picture result = transform.apply(band);
+				if (result.getWidth() != band.getWidth() ||
+						result.getHeight() != band.getHeight())
+					throw new IllegalArgumentException("The transform changed " +
+							"the size of a band from " + band.getWidth() + "x" +
+							band.getHeight() + " to " + result.getWidth() + "x" +
+							result.getHeight());
+
+				writer.writeRows(startY, endY - startY,
+						result.getRasterForReading(),
+						(startY - haloStartY) * width);
+			}
+		}
+	}
+
+	/**
+	 * Applies a transform to a BMP file, a band of DEFAULT_BAND_ROWS rows at
+	 * 	a time.
+	 *
+	 * @see #transform(File, File, int, int, UnaryOperator)
+	 */
+	public static void transform(File input, File output, int halo,
+			UnaryOperator<Picture> transform) throws IOException {
+		transform(input, output, DEFAULT_BAND_ROWS, halo, transform);
+	}
+
+	/**
+	 * Reads all of a buffer at a position of a channel.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new EOFException("The BMP file is truncated");
+			position += read;
+		}
+	}
+
+	/**
+	 * Writes all of a buffer at a position of a channel.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	/**
+	 * Reads a whole BMP file by memory-mapping its pixels and converting
+	 * 	them, in a single pass, into a new TYPE_INT_RGB image.
+	 *
+	 * @param file The file to read.
+	 *
+	 * @return The image, or null if the file is not a BMP file this codec
+	 * 	supports, or is too large to map at once.
+	 *
+	 * @throws IOException If the file cannot be read, or is truncated.
+	 */
+	static BufferedImage readMapped(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ))
+		{
+			Header header = Header.read(channel, file);
+			if (header == null)
+				return null;
+
+			int width = header.width;
+			int height = header.height;
+			long size = (long) header.stride * height;
+			if (size > Integer.MAX_VALUE ||
+					(long) width * height > Integer.MAX_VALUE)
+				return null;
+
+			MappedByteBuffer pixels = channel.map(FileChannel.MapMode.READ_ONLY,
+					header.pixelOffset, size);
+			BufferedImage image = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_RGB);
+			int[] raster = ((DataBufferInt)
+					image.getRaster().getDataBuffer()).getData();
+
+			byte[] row = new byte[header.stride];
+			for (int rowInFile = 0; rowInFile < height; rowInFile++)
+			{
+				pixels.get(row, 0, header.stride);
+				int y = header.topDown ? rowInFile : height - 1 - rowInFile;
+				header.decodeRow(row, 0, raster, y * width);
+			}
+			return image;
+		}
+	}
+
+	////////////////////////////// Nested classes /////////////////////////////
+
+	/**
+	 * The layout of the pixels of a BMP file, read from its headers.
+	 */
+	private static final class Header
+	{
+		/** The width of the picture. */
+		final int width;
+
+		/** The height of the picture. */
+		final int height;
+
+		/** Whether the first row in the file is the top of the picture. */
+		final boolean topDown;
+
+		/** The number of bits used by a pixel: 8, 24, or 32. */
+		final int bitsPerPixel;
+
+		/** The number of bytes used by a row. */
+		final int stride;
+
+		/** The offset of the first row in the file. */
+		final long pixelOffset;
+
+		/** The colors of an 8-bit file, without alpha; null otherwise. */
+		final int[] palette;
+
+		private Header(int width, int height, boolean topDown,
+				int bitsPerPixel, long pixelOffset, int[] palette) {
+			this.width = width;
+			this.height = height;
+			this.topDown = topDown;
+			this.bitsPerPixel = bitsPerPixel;
+			this.stride = rowStride(width, bitsPerPixel);
+			this.pixelOffset = pixelOffset;
+			this.palette = palette;
+		}
+
+		/**
+		 * Reads the headers of a BMP file.
+		 *
+		 * @param channel The open file.
+		 * @param file The file, for error messages.
+		 *
+		 * @return The layout of the file, or null if it is not an
+		 * 	uncompressed 8, 24 or 32-bit BMP file.
+		 *
+		 * @throws IOException If the file cannot be read, or is truncated.
+		 */
+		static Header read(FileChannel channel, File file) throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE +
+					INFO_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (channel.size() < header.capacity())
+				return null;
+			readFully(channel, header, 0);
+
+			if (header.get(0) != 'B' || header.get(1) != 'M')
+				return null;
+
+			long pixelOffset = header.getInt(10) & 0xffffffffL;
+			int infoSize = header.getInt(14);
+			int width = header.getInt(18);
+			int signedHeight = header.getInt(22);
+			int bitsPerPixel = header.getShort(28);
+			int compression = header.getInt(30);
+			int colorsUsed = header.getInt(46);
+
+			if (infoSize < INFO_HEADER_SIZE || width <= 0 ||
+					signedHeight == 0 || signedHeight == Integer.MIN_VALUE ||
+					compression != BI_RGB ||
+					(bitsPerPixel != 8 && bitsPerPixel != 24 &&
+							bitsPerPixel != 32))
+				return null;
+
+			int height = Math.abs(signedHeight);
+			if (pixelOffset + (long) rowStride(width, bitsPerPixel) * height >
+			channel.size())
+				throw new EOFException(file + " is truncated");
+
+			int[] palette = null;
+			if (bitsPerPixel == 8)
+			{
+				int colors = colorsUsed > 0 && colorsUsed <= 256 ?
+						colorsUsed : 256;
+				ByteBuffer entries = ByteBuffer.allocate(colors * 4);
+				readFully(channel, entries, FILE_HEADER_SIZE + infoSize);
+				palette = new int[256];
+				for (int i = 0; i < colors; i++)
+					palette[i] = (entries.get(i * 4 + 2) & 0xff) << 16 |
+					(entries.get(i * 4 + 1) & 0xff) << 8 |
+					(entries.get(i * 4) & 0xff);
+			}
+
+			return new Header(width, height, signedHeight < 0, bitsPerPixel,
+					pixelOffset, palette);
+		}
+
+		/**
+		 * Converts one row of the file into color values without alpha.
+		 *
+		 * @param data The bytes of the row.
+		 * @param in The index of the row in data.
+		 * @param target The raster to write to.
+		 * @param out The index in the raster of the first pixel of the row.
+		 */
+		void decodeRow(byte[] data, int in, int[] target, int out) {
+			switch (bitsPerPixel)
+			{
+			case 8:
+				for (int x = 0; x < width; x++)
+					target[out + x] = palette[data[in + x] & 0xff];
+				break;
+			case 24:
+				for (int x = 0; x < width; x++, in += 3)
+					target[out + x] = (data[in + 2] & 0xff) << 16 |
+					(data[in + 1] & 0xff) << 8 | (data[in] & 0xff);
+				break;
+			default:
+				for (int x = 0; x < width; x++, in += 4)
+					target[out + x] = (data[in + 2] & 0xff) << 16 |
+					(data[in + 1] & 0xff) << 8 | (data[in] & 0xff);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reads the rows of a BMP file.
+	 */
+	public static class Reader implements Closeable
+	{
+		/** The open file. */
+		private final FileChannel channel;
+
+		/** The layout of the file. */
+		private final Header header;
+
+		/**
+		 * Opens a BMP file and reads its header.
+		 *
+		 * @param file The file to read.
+		 *
+		 * @throws IOException If the file cannot be read, or is not a
+		 * 	supported BMP file.
+		 */
+		public Reader(File file) throws IOException {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				header = Header.read(channel, file);
+				if (header == null)
+					throw new IOException(file + " is not an uncompressed " +
+							"8, 24 or 32-bit BMP file");
+			} catch (IOException | RuntimeException ex) {
+				channel.close();
+				throw ex;
+			}
+		}
+
+		/**
+		 * @return The width of the picture.
+		 */
+		public int getWidth() { return header.width; }
+
+		/**
+		 * @return The height of the picture.
+		 */
+		public int getHeight() { return header.height; }
+
+		/**
+		 * Reads a band of rows into a raster, as color values without
+		 * 	alpha.
+		 *
+		 * @param startY The top row of the band.
+		 * @param rows The number of rows in the band.
+		 * @param target The raster to read into.
+		 * @param offset The index in the raster of the first pixel of the
+		 * 	top row of the band.
+		 *
+		 * @throws IOException If the file cannot be read.
+		 */
+		public void readRows(int startY, int rows, int[] target, int offset)
+		throws IOException {
+			int height = header.height;
+			if (startY < 0 || rows < 0 || startY + rows > height)
+				throw new IndexOutOfBoundsException("Rows " + startY + " to " +
+						(startY + rows) + " are outside of a picture of " +
+						height + " rows");
+			if (rows == 0)
+				return;
+
+			// Read at most MAX_CHUNK_BYTES at once, so that the bytes of a
+			// large band neither overflow an int nor double its memory.
+			int stride = header.stride;
+			int chunkRows = Math.max(1, Math.min(rows,
+					MAX_CHUNK_BYTES / stride));
+			ByteBuffer bytes = ByteBuffer.allocate(stride * chunkRows);
+			for (int done = 0; done < rows; done += chunkRows)
+			{
+				int chunk = Math.min(chunkRows, rows - done);
+				readChunk(startY + done, chunk, bytes, target,
+						offset + done * header.width);
+			}
+		}
+
+		/**
+		 * Reads a band of rows small enough for a buffer into a raster.
+		 */
+		private void readChunk(int startY, int rows, ByteBuffer bytes,
+				int[] target, int offset) throws IOException {
+			// The rows of the band are next to each other in the file, in
+			// reverse order if the file is bottom-up.
+			int stride = header.stride;
+			int firstRowInFile = header.topDown ? startY :
+				header.height - startY - rows;
+			bytes.clear();
+			bytes.limit(stride * rows);
+			readFully(channel, bytes, header.pixelOffset +
+					(long) firstRowInFile * stride);
+			byte[] data = bytes.array();
+
+			for (int row = 0; row < rows; row++)
+			{
+				int rowInBand = header.topDown ? row : rows - 1 - row;
+				header.decodeRow(data, rowInBand * stride, target,
+						offset + row * header.width);
+			}
+		}
+
+		/**
+		 * Reads the whole file into a new Picture.
+		 *
+		 * @return The picture.
+		 *
+		 * @throws IOException If the file cannot be read.
+		 */
+		public Picture readPicture() throws IOException {
+			Picture picture = new Picture(header.width, header.height);
+			readRows(0, header.height, picture.getRasterData(), 0);
+			return picture;
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the rows of a 24-bit bottom-up BMP file, in any order.
+	 */
+	public static class Writer implements Closeable
+	{
+		/** The open file. */
+		private final FileChannel channel;
+
+		/** The width of the picture. */
+		private final int width;
+
+		/** The height of the picture. */
+		private final int height;
+
+		/** The number of bytes used by a row. */
+		private final int stride;
+
+		/**
+		 * Creates a BMP file, replacing any existing file, and writes its
+		 * 	header. Rows that are never written are left black.
+		 *
+		 * @param file The file to write.
+		 * @param width The width of the picture.
+		 * @param height The height of the picture.
+		 *
+		 * @throws IOException If the file cannot be written.
+		 */
+		public Writer(File file, int width, int height) throws IOException {
+			if (width <= 0 || height <= 0)
+				throw new IllegalArgumentException("Invalid size: " + width +
+						"x" + height);
+
+			this.width = width;
+			this.height = height;
+			this.stride = rowStride(width, 24);
+
+			long imageSize = (long) stride * height;
+			long fileSize = FILE_HEADER_SIZE + INFO_HEADER_SIZE + imageSize;
+
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE +
+						INFO_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.put((byte) 'B').put((byte) 'M');
+				header.putInt((int) Math.min(fileSize, 0xffffffffL));
+				header.putInt(0);
+				header.putInt(FILE_HEADER_SIZE + INFO_HEADER_SIZE);
+				header.putInt(INFO_HEADER_SIZE);
+				header.putInt(width);
+				header.putInt(height);
+				header.putShort((short) 1);
+				header.putShort((short) 24);
+				header.putInt(BI_RGB);
+				header.putInt((int) Math.min(imageSize, 0xffffffffL));
+				header.putInt(PIXELS_PER_METER);
+				header.putInt(PIXELS_PER_METER);
+				header.putInt(0);
+				header.putInt(0);
+				header.flip();
+				writeFully(channel, header, 0);
+
+				// Reserve the whole file, so rows can be written in any order.
+				writeFully(channel, ByteBuffer.allocate(1), fileSize - 1);
+			} catch (IOException | RuntimeException ex) {
+				channel.close();
+				throw ex;
+			}
+		}
+
+		/**
+		 * Writes a band of rows from a raster of color values.
+		 *
+		 * @param startY The top row of the band.
+		 * @param rows The number of rows in the band.
+		 * @param source The raster to write from.
+		 * @param offset The index in the raster of the first pixel of the
+		 * 	top row of the band.
+		 *
+		 * @throws IOException If the file cannot be written.
+		 */
+		public void writeRows(int startY, int rows, int[] source, int offset)
+		throws IOException {
+			if (startY < 0 || rows < 0 || startY + rows > height)
+				throw new IndexOutOfBoundsException("Rows " + startY + " to " +
+						(startY + rows) + " are outside of a picture of " +
+						height + " rows");
+			if (rows == 0)
+				return;
+
+			// Write at most MAX_CHUNK_BYTES at once, as readRows reads.
+			int chunkRows = Math.max(1, Math.min(rows,
+					MAX_CHUNK_BYTES / stride));
+			byte[] data = new byte[stride * chunkRows];
+			for (int done = 0; done < rows; done += chunkRows)
+			{
+				int chunk = Math.min(chunkRows, rows - done);
+				writeChunk(startY + done, chunk, data, source,
+						offset + done * width);
+			}
+		}
+
+		/**
+		 * Writes a band of rows small enough for a buffer from a raster.
+		 */
+		private void writeChunk(int startY, int rows, byte[] data,
+				int[] source, int offset) throws IOException {
+			// The file is bottom-up, so the band is stored in reverse order.
+			for (int row = 0; row < rows; row++)
+			{
+				int in = offset + row * width;
+				int out = (rows - 1 - row) * stride;
+				for (int x = 0; x < width; x++, out += 3)
+				{
+					int value = source[in + x];
+					data[out] = (byte) value;
+					data[out + 1] = (byte) (value >> 8);
+					data[out + 2] = (byte) (value >> 16);
+				}
+			}
+
+			long firstRowInFile = height - startY - rows;
+			writeFully(channel, ByteBuffer.wrap(data, 0, stride * rows),
+					FILE_HEADER_SIZE + INFO_HEADER_SIZE + firstRowInFile * stride);
+		}
+
+		/**
+		 * Writes a whole picture of the size of the file.
+		 *
+		 * @param picture The picture to write.
+		 *
+		 * @throws IOException If the file cannot be written.
+		 */
+		public void writePicture(Picture picture) throws IOException {
+			if (picture.getWidth() != width || picture.getHeight() != height)
+				throw new IllegalArgumentException("The picture is " +
+						picture.getWidth() + "x" + picture.getHeight() +
+						", but the file is " + width + "x" + height);
+			writeRows(0, height, picture.getRasterForReading(), 0);
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+} // End of BmpCodec class.
@@ -0,0 +1,246 @@
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A color operation that changes the red, green, and blue components of a
+ * 	pixel independently, stored as three 256-entry lookup tables. Applying
+ * 	it costs one table lookup per component, whatever the operation.
+ *
+ * 	Lookup tables compose: then(next) builds the single table that gives
+ * 	the same result as applying this one and then the next one, so a whole
+ * 	chain of channel operations still costs one lookup per component.
+ *
+ * 	Instances are immutable, and can be shared between threads.
+ */
+public final class ChannelLut implements IntUnaryOperator
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The number of entries in each table. */
+	private static final int SIZE = 256;
+
+	/** The lookup table that changes nothing. */
+	private static final ChannelLut IDENTITY = of(value -> value);
+
+	/** The new red component for each red component. */
+	private final int[] red;
+
+	/** The new green component for each green component. */
+	private final int[] green;
+
+	/** The new blue component for each blue component. */
+	private final int[] blue;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the three tables, which must hold values from
+	 * 	0 to 255 and must not be modified afterwards.
+	 */
+	private ChannelLut(int[] red, int[] green, int[] blue) {
+		this.red = red;
+		this.green = green;
+		this.blue = blue;
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * @return The lookup table that changes nothing.
+	 */
+	public static ChannelLut identity() { return IDENTITY; }
+
+	/**
+	 * Builds a lookup table applying the same function to every component.
+	 *
+	 * @param function The function, called once for each value from 0 to
+	 * 	255. Its results are corrected to be within 0 and 255.
+	 *
+	 * @return The lookup table.
+	 */
+	public static ChannelLut of(IntUnaryOperator function) {
+		int[] table = table(function);
+		return new ChannelLut(table, table, table);
+	}
+
+	/**
+	 * Builds a lookup table applying a different function to each component.
+	 *
+	 * @param red The function for the red component.
+	 * @param green The function for the green component.
+	 * @param blue The function for the blue component.
+	 *
+	 * @return The lookup table.
+	 */
+	public static ChannelLut of(IntUnaryOperator red, IntUnaryOperator green,
+			IntUnaryOperator blue) {
+		return new ChannelLut(table(red), table(green), table(blue));
+	}
+
+	/**
+	 * Builds a lookup table adding an amount to each component, like
+	 * 	Picture.lighten, darken, addRed, addGreen, and addBlue.
+	 *
+	 * @param red The amount to add to the red component.
+	 * @param green The amount to add to the green component.
+	 * @param blue The amount to add to the blue component.
+	 *
+	 * @return The lookup table.
+	 */
+	public static ChannelLut add(final int red, final int green,
+			final int blue) {
+		return of(value -> value + red, value -> value + green,
+				value -> value + blue);
+	}
+
+	/**
+	 * @return The lookup table of the photonegative, like Picture.negate.
+	 */
+	public static ChannelLut negate() {
+		return of(value -> 255 - value);
+	}
+
+	/**
+	 * Builds a gamma correction: each component c becomes
+	 * 	255 * (c / 255) ^ (1 / gamma), rounded.
+	 *
+	 * @param gamma The gamma; above 1 lightens, below 1 darkens.
+	 *
+	 * @return The lookup table.
+	 */
+	public static ChannelLut gamma(final double gamma) {
+		if (!(gamma > 0))
+			throw new IllegalArgumentException("Invalid gamma: " + gamma);
+
+		return of(value -> (int) Math.round(
+				255 * Math.pow(value / 255.0, 1 / gamma)));
+	}
+
+	/**
+	 * Builds a levels adjustment: components from inputBlack to inputWhite
+	 * 	are stretched to outputBlack to outputWhite, with a gamma applied in
+	 * 	between, and components outside of the input range are clipped.
+	 *
+	 * @param inputBlack The component that becomes outputBlack.
+	 * @param inputWhite The component that becomes outputWhite; greater
+	 * 	than inputBlack.
+	 * @param gamma The gamma of the midtones; 1 for a linear stretch.
+	 * @param outputBlack The darkest output component.
+	 * @param outputWhite The lightest output component.
+	 *
+	 * @return The lookup table.
+	 */
+	public static ChannelLut levels(final int inputBlack, final int inputWhite,
+			final double gamma, final int outputBlack, final int outputWhite) {
+		if (inputWhite <= inputBlack || !(gamma > 0))
+			throw new IllegalArgumentException("Invalid levels: input " +
+					inputBlack + " to " + inputWhite + ", gamma " + gamma);
+
+		return of(value -> {
+			double position = Math.min(1, Math.max(0,
+					(value - inputBlack) / (double) (inputWhite - inputBlack)));
+			return (int) Math.round(outputBlack + (outputWhite - outputBlack) *
+					Math.pow(position, 1 / gamma));
+		});
+	}
+
+	/**
+	 * Builds a curve through control points, joined by straight lines.
+	 * 	Components before the first point or after the last one take the
+	 * 	output of that point.
+	 *
+	 * @param inputs The components of the control points, in increasing
+	 * 	order.
+	 * @param outputs What each of those components becomes.
+	 *
+	 * @return The lookup table.
+	 */
+	public static ChannelLut curve(int[] inputs, int[] outputs) {
+		if (inputs.length == 0 || inputs.length != outputs.length)
+			throw new IllegalArgumentException("A curve needs as many inputs " +
+					"as outputs, and at least one of each");
+		for (int i = 1; i < inputs.length; i++)
+			if (inputs[i] <= inputs[i - 1])
+				throw new IllegalArgumentException("The inputs of a curve " +
+						"must be increasing");
+
+		final int[] xs = inputs.clone();
+		final int[] ys = outputs.clone();
+		return of(value -> {
+			if (value <= xs[0])
+				return ys[0];
+			for (int i = 1; i < xs.length; i++)
+				if (value <= xs[i])
+					return ys[i - 1] + (int) Math.round((ys[i] - ys[i - 1]) *
+							(value - xs[i - 1]) / (double) (xs[i] - xs[i - 1]));
+			return ys[ys.length - 1];
+		});
+	}
+
+	/**
+	 * Composes this lookup table with another one.
+	 *
+	 * @param next The lookup table to apply after this one.
+	 *
+	 * @return The lookup table that applies this one and then next.
+	 */
+	public ChannelLut then(ChannelLut next) {
+		return new ChannelLut(compose(red, next.red),
+				compose(green, next.green), compose(blue, next.blue));
+	}
+
+	/**
+	 * Applies this lookup table to a color value.
+	 *
+	 * @param value A color value.
+	 *
+	 * @return The new color value, without alpha.
+	 */
+	public int applyAsInt(int value) {
+		return red[(value >> 16) & 0xff] << 16 |
+		green[(value >> 8) & 0xff] << 8 | blue[value & 0xff];
+	}
+
+	/**
+	 * Applies this lookup table to part of a raster, in place.
+	 *
+	 * @param pixels The raster.
+	 * @param from The index of the first pixel to change.
+	 * @param to The index after the last pixel to change.
+	 */
+	public void apply(int[] pixels, int from, int to) {
+		final int[] red = this.red;
+		final int[] green = this.green;
+		final int[] blue = this.blue;
+
+		for (int i = from; i < to; i++)
+		{
+			int value = pixels[i];
+			pixels[i] = red[(value >> 16) & 0xff] << 16 |
+			green[(value >> 8) & 0xff] << 8 | blue[value & 0xff];
+		}
+	}
+
+	/**
+	 * @return A table of the function from 0 to 255, corrected to be within
+	 * 	0 and 255.
+	 */
+	private static int[] table(IntUnaryOperator function) {
+		int[] table = new int[SIZE];
+		for (int value = 0; value < SIZE; value++)
+			table[value] = Math.max(0, Math.min(255,
+					function.applyAsInt(value)));
+		return table;
+	}
+
+	/**
+	 * @return The table applying first and then second.
+	 */
+	private static int[] compose(int[] first, int[] second) {
+		int[] table = new int[SIZE];
+		for (int value = 0; value < SIZE; value++)
+			table[value] = second[first[value]];
+		return table;
+	}
+
+} // End of ChannelLut class.
@@ -0,0 +1,207 @@
+/**
+ * The eight ways of rotating and flipping a picture that keep it on the
+ * 	pixel grid: the identity, the three quarter-turn rotations, and the
+ * 	flips about the horizontal, vertical, and two diagonal axes.
+ * 
+ * 	Each transform is applied in a single pass that writes every pixel of
+ * 	the destination raster exactly once, reading the source pixel it maps
+ * 	from. Transforms that swap the axes (the quarter-turns and the diagonal
+ * 	flips) read the source down its columns, so they are processed in small
+ * 	square blocks to keep the rows being read in the cache.
+ */
+public enum DihedralTransform
+{
+
+	/** Leaves the picture as it is. */
+	IDENTITY(false, false, false),
+
+	/** Rotates the picture 90 degrees clockwise. */
+	ROTATE_CLOCKWISE(true, false, true),
+
+	/** Rotates the picture 180 degrees. */
+	ROTATE_HALF_TURN(false, true, true),
+
+	/** Rotates the picture 90 degrees counterclockwise. */
+	ROTATE_COUNTERCLOCKWISE(true, true, false),
+
+	/** Flips the picture about the horizontal axis through its center. */
+	FLIP_HORIZONTAL(false, false, true),
+
+	/** Flips the picture about the vertical axis through its center. */
+	FLIP_VERTICAL(false, true, false),
+
+	/**
+	 * Flips the picture about the axis through its north-east and
+	 * 	south-west corners.
+	 */
+	FLIP_FORWARD_DIAGONAL(true, true, true),
+
+	/**
+	 * Flips the picture about the axis through its north-west and
+	 * 	south-east corners.
+	 */
+	FLIP_BACKWARD_DIAGONAL(true, false, false);
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** Side of the square blocks used when the axes are swapped. */
+	private static final int BLOCK_SIZE = 64;
+
+	/**
+	 * Whether the destination x-coordinate comes from the source
+	 * 	y-coordinate (and vice versa).
+	 */
+	private final boolean swapsAxes;
+
+	/** Whether the source x-coordinate is mirrored. */
+	private final boolean mirrorsX;
+
+	/** Whether the source y-coordinate is mirrored. */
+	private final boolean mirrorsY;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * The pixel at (x', y') of the destination is read from the source at
+	 * 	(x, y), where (u, v) is (y', x') if swapsAxes and (x', y') otherwise,
+	 * 	x is u (or width - 1 - u if mirrorsX), and y is v (or height - 1 - v
+	 * 	if mirrorsY).
+	 */
+	private DihedralTransform(boolean swapsAxes, boolean mirrorsX,
+			boolean mirrorsY) {
+		this.swapsAxes = swapsAxes;
+		this.mirrorsX = mirrorsX;
+		this.mirrorsY = mirrorsY;
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * @param rotations A number of 90-degree rotations; positive numbers
+	 * 	rotate clockwise, negative numbers counterclockwise.
+	 * 
+	 * @return The transform equivalent to that many rotations.
+	 */
+	public static DihedralTransform forRotation(int rotations) {
+		switch (((rotations % 4) + 4) % 4) {
+		case 1:
+			return ROTATE_CLOCKWISE;
+		case 2:
+			return ROTATE_HALF_TURN;
+		case 3:
+			return ROTATE_COUNTERCLOCKWISE;
+		default:
+			return IDENTITY;
+		}
+	}
+
+	/**
+	 * @return Whether this transform turns a width by height picture into a
+	 * 	height by width picture.
+	 */
+	public boolean swapsAxes() { return swapsAxes; }
+
+	/**
+	 * @param width The width of the source picture.
+	 * @param height The height of the source picture.
+	 * 
+	 * @return The width of the transformed picture.
+	 */
+	public int getTargetWidth(int width, int height) {
+		return swapsAxes ? height : width;
+	}
+
+	/**
+	 * @param width The width of the source picture.
+	 * @param height The height of the source picture.
+	 * 
+	 * @return The height of the transformed picture.
+	 */
+	public int getTargetHeight(int width, int height) {
+		return swapsAxes ? width : height;
+	}
+
+	/**
+	 * Writes the transformed version of a packed, row-major raster into
+	 * 	another one.
+	 * 
+	 * @param source The source raster.
+	 * @param width The width of the source picture.
+	 * @param height The height of the source picture.
+	 * @param target The raster to write to. It must hold
+	 * 	getTargetWidth(width, height) * getTargetHeight(width, height)
+	 * 	pixels, and must not be the same array as source.
+	 */
+	public void apply(final int[] source, final int width, final int height,
+			final int[] target) {
+		final int targetWidth = getTargetWidth(width, height);
+		final int targetHeight = getTargetHeight(width, height);
+
+		/* The source index of the target pixel (x', y') is
+		 * origin + x' * stepX + y' * stepY. */
+		int stepU = mirrorsX ? -1 : 1;
+		int stepV = mirrorsY ? -width : width;
+		final int origin = (mirrorsX ? width - 1 : 0) +
+		(mirrorsY ? (height - 1) * width : 0);
+		final int stepX = swapsAxes ? stepV : stepU;
+		final int stepY = swapsAxes ? stepU : stepV;
+
+		RowBandExecutor.forEachBand(targetWidth, targetHeight,
+				(startY, endY) -> {
+			if (!swapsAxes)
+				copyRows(source, target, targetWidth, origin, stepX, stepY,
+						startY, endY);
+			else
+				copyBlocks(source, target, targetWidth, origin, stepX, stepY,
+						startY, endY);
+		});
+	}
+
+	/**
+	 * Fills rows startY to endY of the target when the source is read
+	 * 	along its rows.
+	 */
+	private static void copyRows(int[] source, int[] target, int targetWidth,
+			int origin, int stepX, int stepY, int startY, int endY) {
+		for (int y = startY; y < endY; y++)
+		{
+			int from = origin + y * stepY;
+			int to = y * targetWidth;
+
+			if (stepX == 1)
+			{
+				System.arraycopy(source, from, target, to, targetWidth);
+			}
+			else
+			{
+				for (int x = 0; x < targetWidth; x++, from += stepX)
+					target[to + x] = source[from];
+			}
+		}
+	}
+
+	/**
+	 * Fills rows startY to endY of the target when the source is read
+	 * 	along its columns, one square block at a time.
+	 */
+	private static void copyBlocks(int[] source, int[] target,
+			int targetWidth, int origin, int stepX, int stepY, int startY,
+			int endY) {
+		for (int blockY = startY; blockY < endY; blockY += BLOCK_SIZE)
+		{
+			int blockEndY = Math.min(endY, blockY + BLOCK_SIZE);
+			for (int blockX = 0; blockX < targetWidth; blockX += BLOCK_SIZE)
+			{
+				int blockEndX = Math.min(targetWidth, blockX + BLOCK_SIZE);
+				for (int y = blockY; y < blockEndY; y++)
+				{
+					int from = origin + y * stepY + blockX * stepX;
+					int to = y * targetWidth;
+					for (int x = blockX; x < blockEndX; x++, from += stepX)
+						target[to + x] = source[from];
+				}
+			}
+		}
+	}
+
+} // End of DihedralTransform enum.
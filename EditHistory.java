@@ -0,0 +1,733 @@
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The undo and redo history of the edits made to a picture. Each edit keeps
+ * 	as little as it can to be undone and redone:
+ *
+ * 	- An edit that can be computed again and has an inverse, such as a flip,
+ * 	a rotation, or a photonegative, keeps only the two operations.
+ * 	- Otherwise, the pixels the edit changed are kept from before it, for
+ * 	undoing it, in tiles of TILE_SIZE pixels, compressed with deflate. Only
+ * 	the tiles where some pixel changed are kept.
+ * 	- An edit that can be computed again, such as a blur, is redone by
+ * 	computing it again; one that cannot, such as a paint bucket fill or a
+ * 	chroma key with a picture from a file that may change, also keeps the
+ * 	tiles from after it.
+ *
+ * 	At most a given number of edits are kept, dropping the oldest ones. When
+ * 	the compressed tiles take more memory than the budget, those of the
+ * 	oldest edits are moved to a temporary file, and read back if these
+ * 	edits are undone or redone. If the file cannot be written, the oldest
+ * 	edits are dropped instead. Tiles of dropped edits leave holes in the
+ * 	file, which is compacted once they take more of it than live tiles,
+ * 	so it stays within twice the size of the tiles it holds.
+ *
+ * 	Recording an edit does no file I/O, so it can be done on the event
+ * 	dispatch thread; the tiles are moved to the file by makeRoomFor,
+ * 	which the thread preparing the next edit calls.
+ *
+ * 	The defaults are DEFAULT_MAX_EDITS edits and a budget of
+ * 	DEFAULT_MEMORY_BUDGET bytes, which the picture.history.edits and
+ * 	picture.history.memory system properties override.
+ */
+public class EditHistory
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The number of edits kept by default. */
+	public static final int DEFAULT_MAX_EDITS = 50;
+
+	/** The memory the compressed tiles may take by default, in bytes. */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+	/** The width and height of the tiles kept, in pixels. */
+	public static final int TILE_SIZE = 64;
+
+	/** The number of edits kept. */
+	private final int maxEdits;
+
+	/** The memory the compressed tiles may take, in bytes. */
+	private final long memoryBudget;
+
+	/** The directory of the file tiles are moved to. */
+	private final File spillDirectory;
+
+	/** The edits, oldest first. Those before cursor are done. */
+	private final List<Edit> edits = new ArrayList<Edit>();
+
+	/** The number of edits done, which can be undone. */
+	private int cursor;
+
+	/** The bytes of compressed tiles in memory. */
+	private long memoryUsed;
+
+	/** The file tiles are moved to, or null until one needs to be. */
+	private File spillFile;
+	private RandomAccessFile spill;
+
+	/** The bytes of the file still used by tiles of kept edits. */
+	private long spilledBytes;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * Creates a history with the default number of edits and memory
+	 * 	budget, moving tiles to the default temporary directory.
+	 */
+	public EditHistory() {
+		this(Integer.getInteger("picture.history.edits", DEFAULT_MAX_EDITS),
+				Long.getLong("picture.history.memory", DEFAULT_MEMORY_BUDGET),
+				null);
+	}
+
+	/**
+	 * Creates a history.
+	 *
+	 * @param maxEdits The number of edits kept; at least 1.
+	 * @param memoryBudget The memory the compressed tiles may take, in
+	 * 	bytes, before those of the oldest edits are moved to a file.
+	 * @param spillDirectory The directory to create the file in, or null
+	 * 	for the default temporary directory.
+	 */
+	public EditHistory(int maxEdits, long memoryBudget, File spillDirectory) {
+		if (maxEdits < 1)
+			throw new IllegalArgumentException("At least one edit must be " +
+					"kept, but " + maxEdits + " were asked for");
+		if (memoryBudget < 0)
+			throw new IllegalArgumentException("Invalid memory budget: " +
+					memoryBudget);
+
+		this.maxEdits = maxEdits;
+		this.memoryBudget = memoryBudget;
+		this.spillDirectory = spillDirectory;
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * Records an edit that was just made, as prepare and then record would,
+	 * 	and keeps the tiles in memory within the budget.
+	 *
+	 * @param description The name of the edit, for showing to the user.
+	 * @param before The picture before the edit.
+	 * @param after The picture after the edit.
+	 * @param changed The region of the picture the edit changed, or null.
+	 * @param redo The edit, or null if it cannot be computed again.
+	 * @param undo The inverse of the edit, or null if it has none.
+	 *
+	 * @return The edit recorded, or null if the edit changed nothing.
+	 */
+	public Edit record(String description, SimplePicture before,
+			SimplePicture after, Rectangle changed, UnaryOperator<Picture> redo,
+			UnaryOperator<Picture> undo) {
+		Edit edit = prepare(description, before, after, changed, redo, undo);
+		if (edit != null)
+		{
+			record(edit);
+			makeRoom(0);
+		}
+		return edit;
+	}
+
+	/**
+	 * Keeps what is needed to undo and redo an edit that was just made,
+	 * 	compressing the tiles it changed if needed. This does not change the
+	 * 	history, so it may be called on any thread, such as the one that
+	 * 	made the edit, while the pictures are not changed.
+	 *
+	 * @param description The name of the edit, for showing to the user.
+	 * @param before The picture before the edit. Its pixels are only read.
+	 * @param after The picture after the edit. Its pixels are only read.
+	 * @param changed The region of the picture the edit changed, or null if
+	 * 	it changed no pixel. It is ignored if the edit changed the size of
+	 * 	the picture.
+	 * @param redo The edit, to compute it again on the picture as it was
+	 * 	before it, or null if it cannot be.
+	 * @param undo The inverse of the edit, or null if it has none.
+	 *
+	 * @return The edit, to be recorded, or null if the edit changed
+	 * 	nothing.
+	 */
+	public Edit prepare(String description, SimplePicture before,
+			SimplePicture after, Rectangle changed, UnaryOperator<Picture> redo,
+			UnaryOperator<Picture> undo) {
+		boolean resized = before.getWidth() != after.getWidth() ||
+		before.getHeight() != after.getHeight();
+		if (!resized && changed == null)
+			return null;
+
+		Edit edit = new Edit(description, redo, undo, before.getWidth(),
+				before.getHeight(), after.getWidth(), after.getHeight());
+		if (redo == null || undo == null)
+		{
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+			try {
+				if (resized)
+				{
+					if (undo == null)
+						edit.beforeTiles = keepTiles(before, null,
+								fullRegion(before), deflater);
+					if (redo == null)
+						edit.afterTiles = keepTiles(after, null,
+								fullRegion(after), deflater);
+				}
+				else
+				{
+					Rectangle region = changed.intersection(fullRegion(before));
+					if (undo == null)
+						edit.beforeTiles = keepTiles(before, after, region,
+								deflater);
+					if (redo == null)
+						edit.afterTiles = keepTiles(after, before, region,
+								deflater);
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+		return edit;
+	}
+
+	/**
+	 * Moves the tiles of the oldest edits recorded to the file until the
+	 * 	memory they take leaves room for those of an edit in the budget.
+	 * 	This may write to the file, so it is meant to be called after
+	 * 	prepare, on the same thread, before the edit is recorded.
+	 *
+	 * @param edit The edit returned by prepare.
+	 */
+	public void makeRoomFor(Edit edit) {
+		makeRoom(edit.memorySize());
+	}
+
+	/**
+	 * Records an edit returned by prepare, dropping the edits that were
+	 * 	undone, which can no longer be redone. This does no file I/O, so
+	 * 	the tiles of the edit stay in memory until makeRoomFor is called
+	 * 	for the next one.
+	 *
+	 * @param edit The edit.
+	 */
+	public synchronized void record(Edit edit) {
+		while (edits.size() > cursor)
+			release(edits.remove(edits.size() - 1));
+		edits.add(edit);
+		cursor++;
+		memoryUsed += edit.memorySize();
+		while (edits.size() > maxEdits)
+			dropOldest();
+	}
+
+	/**
+	 * @return The edit undo would undo, or null if there is none.
+	 */
+	public synchronized Edit getUndoEdit() {
+		return cursor > 0 ? edits.get(cursor - 1) : null;
+	}
+
+	/**
+	 * @return The edit redo would redo, or null if there is none.
+	 */
+	public synchronized Edit getRedoEdit() {
+		return cursor < edits.size() ? edits.get(cursor) : null;
+	}
+
+	/**
+	 * Records that the edit returned by getUndoEdit was undone.
+	 *
+	 * @param edit The edit.
+	 */
+	public synchronized void undone(Edit edit) {
+		if (edit != getUndoEdit())
+			throw new IllegalStateException(edit + " is not the edit to undo");
+		cursor--;
+	}
+
+	/**
+	 * Records that the edit returned by getRedoEdit was redone.
+	 *
+	 * @param edit The edit.
+	 */
+	public synchronized void redone(Edit edit) {
+		if (edit != getRedoEdit())
+			throw new IllegalStateException(edit + " is not the edit to redo");
+		cursor++;
+	}
+
+	/**
+	 * @return The number of edits that can be undone.
+	 */
+	public synchronized int getUndoCount() { return cursor; }
+
+	/**
+	 * @return The number of edits that can be redone.
+	 */
+	public synchronized int getRedoCount() { return edits.size() - cursor; }
+
+	/**
+	 * @return The bytes of compressed tiles in memory.
+	 */
+	public synchronized long getMemoryUsed() { return memoryUsed; }
+
+	/**
+	 * @return The bytes of compressed tiles moved to the file.
+	 */
+	public synchronized long getSpilledBytes() { return spilledBytes; }
+
+	/**
+	 * Drops every edit, and deletes the file tiles were moved to.
+	 */
+	public synchronized void clear() {
+		edits.clear();
+		cursor = 0;
+		memoryUsed = 0;
+		spilledBytes = 0;
+		closeSpill();
+	}
+
+	/**
+	 * Compresses the tiles of a region of a picture in which some pixel
+	 * 	differs from another picture of the same size.
+	 *
+	 * @param picture The picture to keep the tiles of.
+	 * @param other The picture to compare with, or null to keep every tile.
+	 * @param region The region to keep, within the picture.
+	 * @param deflater The Deflater to compress with.
+	 *
+	 * @return The tiles kept.
+	 */
+	private static List<Tile> keepTiles(SimplePicture picture,
+			SimplePicture other, Rectangle region, Deflater deflater) {
+		List<Tile> tiles = new ArrayList<Tile>();
+		int[] pixels = picture.getRasterForReading();
+		int[] otherPixels = other == null ? null :
+			other.getRasterForReading();
+		int width = picture.getWidth();
+		int[] values = new int[TILE_SIZE * TILE_SIZE];
+
+		// The tiles are aligned on the picture, not on the region.
+		for (int tileY = region.y / TILE_SIZE * TILE_SIZE;
+		tileY < region.y + region.height; tileY += TILE_SIZE)
+		{
+			for (int tileX = region.x / TILE_SIZE * TILE_SIZE;
+			tileX < region.x + region.width; tileX += TILE_SIZE)
+			{
+				Rectangle tile = new Rectangle(tileX, tileY, TILE_SIZE,
+						TILE_SIZE).intersection(region);
+				boolean changed = otherPixels == null;
+				int count = 0;
+				for (int y = tile.y; y < tile.y + tile.height; y++)
+				{
+					int start = y * width + tile.x;
+					System.arraycopy(pixels, start, values, count, tile.width);
+					if (!changed && !Arrays.equals(pixels, start,
+							start + tile.width, otherPixels, start,
+							start + tile.width))
+						changed = true;
+					count += tile.width;
+				}
+				if (changed)
+					tiles.add(new Tile(tile, compress(values, tile.width,
+							count, deflater)));
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Compresses the pixels of a tile. Each component is stored as its
+	 * 	difference with the same component of the pixel on its left, as in
+	 * 	the PNG "sub" filter, which deflate compresses much better than the
+	 * 	components themselves for photographs.
+	 *
+	 * @param values The pixels, row after row.
+	 * @param width The width of the tile.
+	 * @param count The number of pixels.
+	 * @param deflater The Deflater to compress with.
+	 *
+	 * @return The compressed pixels.
+	 */
+	private static byte[] compress(int[] values, int width, int count,
+			Deflater deflater) {
+		byte[] bytes = new byte[3 * count];
+		for (int i = 0, j = 0; i < count; i++)
+		{
+			int left = i % width == 0 ? 0 : values[i - 1];
+			int value = values[i];
+			bytes[j++] = (byte) ((value >> 16) - (left >> 16));
+			bytes[j++] = (byte) ((value >> 8) - (left >> 8));
+			bytes[j++] = (byte) (value - left);
+		}
+
+		deflater.reset();
+		deflater.setInput(bytes);
+		deflater.finish();
+		byte[] buffer = new byte[bytes.length / 2 + 64];
+		int length = 0;
+		while (!deflater.finished())
+		{
+			if (length == buffer.length)
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			length += deflater.deflate(buffer, length, buffer.length - length);
+		}
+		return Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * Restores pixels kept by compress.
+	 *
+	 * @param data The compressed pixels.
+	 * @param width The width of the tile.
+	 * @param count The number of pixels.
+	 * @param inflater The Inflater to decompress with.
+	 *
+	 * @return The pixels, row after row.
+	 */
+	private static int[] decompress(byte[] data, int width, int count,
+			Inflater inflater) {
+		byte[] bytes = new byte[3 * count];
+		inflater.reset();
+		inflater.setInput(data);
+		try {
+			int length = 0;
+			while (length < bytes.length && !inflater.finished())
+				length += inflater.inflate(bytes, length, bytes.length - length);
+			if (length < bytes.length)
+				throw new IllegalStateException("A tile is truncated");
+		} catch (DataFormatException ex) {
+			throw new IllegalStateException("A tile is corrupt", ex);
+		}
+
+		int[] values = new int[count];
+		for (int i = 0, j = 0; i < count; i++)
+		{
+			int left = i % width == 0 ? 0 : values[i - 1];
+			int red = (left >> 16) + bytes[j++] & 0xff;
+			int green = (left >> 8) + bytes[j++] & 0xff;
+			int blue = left + bytes[j++] & 0xff;
+			values[i] = red << 16 | green << 8 | blue;
+		}
+		return values;
+	}
+
+	/**
+	 * Makes a picture from another by writing tiles over it.
+	 *
+	 * @param picture The picture to start from.
+	 * @param tiles The tiles to write.
+	 * @param width The width of the picture the tiles were kept from.
+	 * @param height The height of the picture the tiles were kept from.
+	 *
+	 * @return A copy of the picture with the tiles written over it, marked
+	 * 	dirty only where they are; or, if the picture is not of the given
+	 * 	size, a new picture of that size made of the tiles alone.
+	 */
+	private Picture writeTiles(Picture picture, List<Tile> tiles, int width,
+			int height) {
+		Picture result;
+		if (picture.getWidth() == width && picture.getHeight() == height)
+			result = new Picture(picture);
+		else
+			result = new Picture(width, height);
+
+		// Only the tiles written are dirty, not the whole copy.
+		int[] pixels = result.getRasterData();
+		result.takeDirtyRegion();
+		Inflater inflater = new Inflater(true);
+		try {
+			for (Tile tile : tiles)
+			{
+				Rectangle area = tile.area;
+				int[] values = decompress(read(tile), area.width,
+						area.width * area.height, inflater);
+				for (int row = 0; row < area.height; row++)
+				{
+					System.arraycopy(values, row * area.width, pixels,
+							(area.y + row) * width + area.x, area.width);
+				}
+				result.markModified(area.x, area.y, area.width, area.height);
+			}
+		} finally {
+			inflater.end();
+		}
+		return result;
+	}
+
+	/**
+	 * @return The compressed pixels of a tile, read back from the file if
+	 * 	they were moved to it.
+	 */
+	private synchronized byte[] read(Tile tile) {
+		if (tile.data != null)
+			return tile.data;
+
+		byte[] data = new byte[tile.length];
+		try {
+			spill.seek(tile.offset);
+			spill.readFully(data);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Could not read an edit back from " +
+					spillFile, ex);
+		}
+		return data;
+	}
+
+	/**
+	 * Moves the tiles of the oldest edits to the file until those left in
+	 * 	memory fit in the budget with some bytes to spare, compacting the
+	 * 	file first if it is mostly holes. The edits are dropped instead if
+	 * 	the file cannot be written.
+	 *
+	 * @param bytes The bytes to leave room for.
+	 */
+	private synchronized void makeRoom(long bytes) {
+		try {
+			if (spill != null && spill.length() - spilledBytes > spilledBytes)
+				compactSpill();
+			for (int i = 0; i < edits.size() && memoryUsed + bytes > memoryBudget; i++)
+				spill(edits.get(i));
+		} catch (IOException ex) {
+			// Keep the memory bounded by forgetting the oldest edits.
+			while (!edits.isEmpty() && memoryUsed + bytes > memoryBudget)
+				dropOldest();
+		}
+	}
+
+	/**
+	 * Moves the tiles of an edit to the end of the file.
+	 */
+	private void spill(Edit edit) throws IOException {
+		if (spill == null)
+		{
+			spillFile = File.createTempFile("picture-history", ".tiles",
+					spillDirectory);
+			spillFile.deleteOnExit();
+			spill = new RandomAccessFile(spillFile, "rw");
+		}
+
+		for (List<Tile> tiles : edit.tileLists())
+		{
+			for (Tile tile : tiles)
+			{
+				if (tile.data == null)
+					continue;
+
+				long offset = spill.length();
+				spill.seek(offset);
+				spill.write(tile.data);
+				tile.offset = offset;
+				tile.length = tile.data.length;
+				tile.data = null;
+				memoryUsed -= tile.length;
+				spilledBytes += tile.length;
+			}
+		}
+	}
+
+	/**
+	 * Moves the tiles of the edits kept that are in the file to its start,
+	 * 	in the order they are in, and cuts off the rest, which only held
+	 * 	tiles of dropped edits. Each tile moves towards the start, so it
+	 * 	never overwrites one not moved yet.
+	 */
+	private void compactSpill() throws IOException {
+		List<Tile> spilled = new ArrayList<Tile>();
+		for (Edit edit : edits)
+			for (List<Tile> tiles : edit.tileLists())
+				for (Tile tile : tiles)
+					if (tile.data == null)
+						spilled.add(tile);
+		spilled.sort(Comparator.comparingLong(tile -> tile.offset));
+
+		long end = 0;
+		for (Tile tile : spilled)
+		{
+			if (tile.offset != end)
+			{
+				byte[] data = new byte[tile.length];
+				spill.seek(tile.offset);
+				spill.readFully(data);
+				spill.seek(end);
+				spill.write(data);
+				tile.offset = end;
+			}
+			end += tile.length;
+		}
+		spill.setLength(end);
+		spilledBytes = end;
+	}
+
+	/**
+	 * Drops the oldest edit.
+	 */
+	private void dropOldest() {
+		release(edits.remove(0));
+		if (cursor > 0)
+			cursor--;
+	}
+
+	/**
+	 * Forgets the tiles of an edit that was dropped. Those in the file are
+	 * 	left there until it is compacted.
+	 */
+	private void release(Edit edit) {
+		for (List<Tile> tiles : edit.tileLists())
+		{
+			for (Tile tile : tiles)
+			{
+				if (tile.data != null)
+					memoryUsed -= tile.data.length;
+				else
+					spilledBytes -= tile.length;
+			}
+		}
+	}
+
+	/**
+	 * Closes and deletes the file tiles were moved to, if any.
+	 */
+	private void closeSpill() {
+		if (spill == null)
+			return;
+
+		try {
+			spill.close();
+		} catch (IOException ex) {
+			// It is deleted anyway.
+		}
+		spillFile.delete();
+		spill = null;
+		spillFile = null;
+	}
+
+	/**
+	 * @return The whole area of a picture.
+	 */
+	private static Rectangle fullRegion(SimplePicture picture) {
+		return new Rectangle(0, 0, picture.getWidth(), picture.getHeight());
+	}
+
+	////////////////////////////// Nested classes /////////////////////////////
+
+	/**
+	 * An edit kept by an EditHistory.
+	 */
+	public final class Edit
+	{
+		private final String description;
+		private final UnaryOperator<Picture> redo;
+		private final UnaryOperator<Picture> undo;
+		private final int beforeWidth;
+		private final int beforeHeight;
+		private final int afterWidth;
+		private final int afterHeight;
+
+		/** The tiles from before and after the edit, if they are kept. */
+		private List<Tile> beforeTiles = new ArrayList<Tile>();
+		private List<Tile> afterTiles = new ArrayList<Tile>();
+
+		private Edit(String description, UnaryOperator<Picture> redo,
+				UnaryOperator<Picture> undo, int beforeWidth, int beforeHeight,
+				int afterWidth, int afterHeight) {
+			this.description = description;
+			this.redo = redo;
+			this.undo = undo;
+			this.beforeWidth = beforeWidth;
+			this.beforeHeight = beforeHeight;
+			this.afterWidth = afterWidth;
+			this.afterHeight = afterHeight;
+		}
+
+		/**
+		 * @return The name of the edit.
+		 */
+		public String getDescription() { return description; }
+
+		/**
+		 * Undoes this edit. This does not change the history; undone must
+		 * 	be called once the result is used.
+		 *
+		 * @param picture The picture as it was after the edit.
+		 *
+		 * @return A new picture, as it was before the edit. If it has the
+		 * 	same size, only the region the edit changed is marked dirty.
+		 */
+		public Picture undo(Picture picture) {
+			if (undo != null)
+				return undo.apply(picture);
+			return writeTiles(picture, beforeTiles, beforeWidth, beforeHeight);
+		}
+
+		/**
+		 * Redoes this edit. This does not change the history; redone must
+		 * 	be called once the result is used.
+		 *
+		 * @param picture The picture as it was before the edit.
+		 *
+		 * @return A new picture, as it was after the edit. If it has the
+		 * 	same size, only the region the edit changed is marked dirty.
+		 */
+		public Picture redo(Picture picture) {
+			if (redo != null)
+				return redo.apply(picture);
+			return writeTiles(picture, afterTiles, afterWidth, afterHeight);
+		}
+
+		public String toString() { return description; }
+
+		/**
+		 * @return The bytes of compressed tiles of this edit in memory.
+		 */
+		private long memorySize() {
+			long size = 0;
+			for (List<Tile> tiles : tileLists())
+				for (Tile tile : tiles)
+					if (tile.data != null)
+						size += tile.data.length;
+			return size;
+		}
+
+		/**
+		 * @return The tiles from before and after the edit.
+		 */
+		private List<List<Tile>> tileLists() {
+			return Arrays.asList(beforeTiles, afterTiles);
+		}
+	}
+
+	/**
+	 * The compressed pixels of a rectangle of a picture, in memory or in
+	 * 	the file.
+	 */
+	private static final class Tile
+	{
+		/** The rectangle of the picture. */
+		final Rectangle area;
+
+		/** The compressed pixels, or null if they were moved to the file. */
+		byte[] data;
+
+		/** Where the compressed pixels are in the file. */
+		long offset;
+		int length;
+
+		Tile(Rectangle area, byte[] data) {
+			this.area = area;
+			this.data = data;
+		}
+	}
+
+} // End of EditHistory class.
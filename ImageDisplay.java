@@ -1,9 +1,27 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Class to display an image and the current location with a + sign.
  * 
+ * 	Moving the current location repaints only the small areas under the
+ * 	old and new + signs, and repaintImage repaints only the part of the
+ * 	image that changed, so updates stay cheap however large the image is.
+ * 
+ * 	The image may be shown at another size than its own. It is then scaled
+ * 	in square tiles of TILE_SIZE pixels of the display, only for the tiles
+ * 	being repainted: smoothly when shrunk, and with square pixels when
+ * 	enlarged. The most recently drawn tiles are kept, so scrolling back
+ * 	over them only copies them, and after the display scrolls, the tiles
+ * 	just past the visible area in the direction of the scrolling are
+ * 	scaled ahead of time, a few at a time, when the event queue is idle.
+ * 	Shown at its own size, the image is copied straight to the screen,
+ * 	again only over the area being repainted.
+ * 
  * @author Barb Ericson (ericson@cc.gatech.edu)
  * 	(Copyright Georgia Institute of Technology 2004)
  * @author Modified by Colleen Lewis (colleenl@berkeley.edu),
@@ -19,9 +37,46 @@ public class ImageDisplay extends JPanel implements Scrollable
 	
 	private Image image;         // the image to draw
 	private Dimension prefSize;  // the preferred size of the display
+	private int imageWidth;      // the width to draw the image at
+	private int imageHeight;     // the height to draw the image at
 	private int currentX = 0;    // the current x index 
 	private int currentY = 0;    // the current y index
 	private static final long serialVersionUID = 0; 
+
+	/** How far the + sign and its outline reach from the current location. */
+	private static final int CROSS_REACH = 4;
+
+	/** The width and height of the tiles of a scaled image, in pixels. */
+	public static final int TILE_SIZE = 256;
+
+	/**
+	 * The least number of tiles kept. Twice the number of tiles visible at
+	 * 	once are kept if that is more.
+	 */
+	private static final int MIN_CACHED_TILES = 32;
+
+	/** The scaled tiles, from least to most recently drawn, by tileKey. */
+	private final LinkedHashMap<Long, BufferedImage> tiles =
+		new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+		private static final long serialVersionUID = 0;
+
+		protected boolean removeEldestEntry(
+				Map.Entry<Long, BufferedImage> eldest) {
+			return size() > maxTiles;
+		}
+	};
+
+	/** The number of tiles kept. */
+	private int maxTiles = MIN_CACHED_TILES;
+
+	/** The visible area when the display was last painted, or null. */
+	private Rectangle lastVisible;
+
+	/** The keys of the tiles to scale ahead of time. */
+	private final ArrayDeque<Long> prefetch = new ArrayDeque<Long>();
+
+	/** Whether scaling the tiles in prefetch is scheduled. */
+	private boolean prefetchScheduled;
 	
 	//////////////////////////// Constructors /////////////////////////////////
 
@@ -32,7 +87,9 @@ public class ImageDisplay extends JPanel implements Scrollable
 	 */
 	public ImageDisplay(Image theImage) {
 		image = theImage;
-		prefSize = new Dimension(image.getWidth(this), image.getHeight(this));
+		imageWidth = image.getWidth(this);
+		imageHeight = image.getHeight(this);
+		prefSize = new Dimension(imageWidth, imageHeight);
 		setPreferredSize(prefSize);
 		revalidate();
 	}
@@ -73,8 +130,9 @@ public class ImageDisplay extends JPanel implements Scrollable
 	 * @param x The x-value to use.
 	 */
 	public void setCurrentX(int x) {
+		repaintCross();
 		currentX = x;
-		repaint();
+		repaintCross();
 	}
 
 	/**
@@ -83,8 +141,39 @@ public class ImageDisplay extends JPanel implements Scrollable
 	 * @param y The y-value to use.
 	 */
 	public void setCurrentY(int y) {
+		repaintCross();
 		currentY = y;
-		repaint();
+		repaintCross();
+	}
+
+	/**
+	 * Repaints the part of this display showing a region of the image, for
+	 * 	when only those pixels of the image have changed.
+	 * 
+	 * @param region The region of the image to repaint, in image
+	 * 	coordinates.
+	 */
+	public void repaintImage(Rectangle region) {
+		double xScale = (double) imageWidth / image.getWidth(this);
+		double yScale = (double) imageHeight / image.getHeight(this);
+		int left = (int) Math.floor(region.x * xScale);
+		int top = (int) Math.floor(region.y * yScale);
+		int right = (int) Math.ceil((region.x + region.width) * xScale);
+		int bottom = (int) Math.ceil((region.y + region.height) * yScale);
+
+		// Smoothing reaches one pixel further.
+		if (isScaled())
+			dropTiles(new Rectangle(left - 1, top - 1, right - left + 2,
+					bottom - top + 2));
+		repaint(left, top, right - left, bottom - top);
+	}
+
+	/**
+	 * Repaints the area under the + sign at the current location.
+	 */
+	private void repaintCross() {
+		repaint(currentX - CROSS_REACH, currentY - CROSS_REACH,
+				2 * CROSS_REACH + 1, 2 * CROSS_REACH + 1);
 	}
 
 	/**
@@ -93,12 +182,40 @@ public class ImageDisplay extends JPanel implements Scrollable
 	 * @param theImage The new Image to use.
 	 */
 	public void setImage(Image theImage) {
+		setImage(theImage, theImage.getWidth(this), theImage.getHeight(this));
+	}
+
+	/**
+	 * Sets the associated Image, and the size to show it at.
+	 * 
+	 * @param theImage The new Image to use.
+	 * @param width The width to draw the Image at.
+	 * @param height The height to draw the Image at.
+	 */
+	public void setImage(Image theImage, int width, int height) {
 		image = theImage;
-		setPreferredSize(new Dimension(image.getWidth(this),
-				image.getHeight(this)));
+		imageWidth = width;
+		imageHeight = height;
+		clearTiles();
+		setPreferredSize(new Dimension(width, height));
 		repaint();
 	}
 
+	/**
+	 * Drops all the scaled tiles of the image, for when its pixels changed
+	 * 	in ways repaintImage was not told about, and repaints this display.
+	 */
+	public void clearTiles() {
+		tiles.clear();
+		prefetch.clear();
+		repaint();
+	}
+
+	/**
+	 * @return The number of scaled tiles kept.
+	 */
+	int getCachedTileCount() { return tiles.size(); }
+
 	/**
 	 * @return The preferred size of this component.
 	 */
@@ -140,6 +257,188 @@ public class ImageDisplay extends JPanel implements Scrollable
 	 */
 	public boolean getScrollableTracksViewportHeight() { return false; }
 
+	/**
+	 * @return Whether the image is shown at another size than its own.
+	 */
+	private boolean isScaled() {
+		return imageWidth != image.getWidth(this) ||
+		imageHeight != image.getHeight(this);
+	}
+
+	/**
+	 * Draws the scaled tiles covering an area of this display, scaling
+	 * 	those that are not kept.
+	 * 
+	 * @param g The graphics object to draw with.
+	 * @param area The area to draw, within the image.
+	 */
+	private void paintTiles(Graphics g, Rectangle area) {
+		int firstColumn = area.x / TILE_SIZE;
+		int lastColumn = (area.x + area.width - 1) / TILE_SIZE;
+		int firstRow = area.y / TILE_SIZE;
+		int lastRow = (area.y + area.height - 1) / TILE_SIZE;
+
+		// Keep enough tiles to cover the view twice over.
+		Rectangle visible = getVisibleRect();
+		int visibleTiles = (visible.width / TILE_SIZE + 2) *
+		(visible.height / TILE_SIZE + 2);
+		maxTiles = Math.max(MIN_CACHED_TILES, 2 * visibleTiles);
+
+		for (int row = firstRow; row <= lastRow; row++)
+			for (int column = firstColumn; column <= lastColumn; column++)
+				g.drawImage(getTile(column, row), column * TILE_SIZE,
+						row * TILE_SIZE, this);
+	}
+
+	/**
+	 * Returns a scaled tile, scaling it if it is not kept.
+	 * 
+	 * @param column The column of the tile.
+	 * @param row The row of the tile.
+	 * 
+	 * @return The tile.
+	 */
+	private BufferedImage getTile(int column, int row) {
+		Long key = tileKey(column, row);
+		BufferedImage tile = tiles.get(key);
+		if (tile == null)
+		{
+			tile = scaleTile(column, row);
+			tiles.put(key, tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * Scales the part of the image shown by a tile. The whole image is drawn
+	 * 	into the tile, shifted so the tile is at its origin, which clips it
+	 * 	to the tile and gives the same pixels as scaling it at once, but for
+	 * 	smoothing rounding differently by one where tiles meet.
+	 * 
+	 * @param column The column of the tile.
+	 * @param row The row of the tile.
+	 * 
+	 * @return The tile, smaller than TILE_SIZE on the right and bottom
+	 * 	edges of the image.
+	 */
+	private BufferedImage scaleTile(int column, int row) {
+		int x = column * TILE_SIZE;
+		int y = row * TILE_SIZE;
+		BufferedImage tile = new BufferedImage(
+				Math.min(TILE_SIZE, imageWidth - x),
+				Math.min(TILE_SIZE, imageHeight - y),
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = tile.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				imageWidth < image.getWidth(this) ?
+						RenderingHints.VALUE_INTERPOLATION_BILINEAR :
+							RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		g2.drawImage(image, -x, -y, imageWidth, imageHeight, this);
+		g2.dispose();
+		return tile;
+	}
+
+	/**
+	 * Drops the scaled tiles overlapping an area of this display.
+	 * 
+	 * @param area The area, in display coordinates.
+	 */
+	private void dropTiles(Rectangle area) {
+		Rectangle within = area.intersection(
+				new Rectangle(0, 0, imageWidth, imageHeight));
+		if (within.isEmpty())
+			return;
+
+		for (int row = within.y / TILE_SIZE;
+		row <= (within.y + within.height - 1) / TILE_SIZE; row++)
+			for (int column = within.x / TILE_SIZE;
+			column <= (within.x + within.width - 1) / TILE_SIZE; column++)
+				tiles.remove(tileKey(column, row));
+	}
+
+	/**
+	 * Queues the tiles just past the visible area, on the sides it moved
+	 * 	towards since the last paint, to be scaled ahead of time.
+	 */
+	private void prefetchTiles() {
+		Rectangle visible = getVisibleRect();
+		Rectangle last = lastVisible;
+		lastVisible = visible;
+		if (last == null || visible.isEmpty() ||
+				(visible.x == last.x && visible.y == last.y))
+			return;
+
+		int firstColumn = visible.x / TILE_SIZE;
+		int lastColumn = (visible.x + visible.width - 1) / TILE_SIZE;
+		int firstRow = visible.y / TILE_SIZE;
+		int lastRow = (visible.y + visible.height - 1) / TILE_SIZE;
+		int dx = Integer.signum(visible.x - last.x);
+		int dy = Integer.signum(visible.y - last.y);
+
+		prefetch.clear();
+		if (dx != 0)
+		{
+			int column = dx > 0 ? lastColumn + 1 : firstColumn - 1;
+			for (int row = firstRow; row <= lastRow; row++)
+				queueTile(column, row);
+		}
+		if (dy != 0)
+		{
+			int row = dy > 0 ? lastRow + 1 : firstRow - 1;
+			for (int column = firstColumn; column <= lastColumn; column++)
+				queueTile(column, row);
+			if (dx != 0)
+				queueTile(dx > 0 ? lastColumn + 1 : firstColumn - 1, row);
+		}
+
+		if (!prefetch.isEmpty() && !prefetchScheduled)
+		{
+			prefetchScheduled = true;
+			SwingUtilities.invokeLater(this::scaleNextTile);
+		}
+	}
+
+	/**
+	 * Queues a tile to be scaled ahead of time, if it is within the image
+	 * 	and not kept already.
+	 */
+	private void queueTile(int column, int row) {
+		if (column >= 0 && row >= 0 && column * TILE_SIZE < imageWidth &&
+				row * TILE_SIZE < imageHeight &&
+				!tiles.containsKey(tileKey(column, row)))
+			prefetch.add(tileKey(column, row));
+	}
+
+	/**
+	 * Scales the next tile queued, then lets other events run before
+	 * 	scaling the one after it.
+	 */
+	private void scaleNextTile() {
+		prefetchScheduled = false;
+		Long key = prefetch.poll();
+		if (key == null || !isScaled())
+			return;
+
+		int column = (int) (long) key;
+		int row = (int) (key >>> 32);
+		if (!tiles.containsKey(key) && column * TILE_SIZE < imageWidth &&
+				row * TILE_SIZE < imageHeight)
+			tiles.put(key, scaleTile(column, row));
+
+		if (!prefetch.isEmpty())
+		{
+			prefetchScheduled = true;
+			SwingUtilities.invokeLater(this::scaleNextTile);
+		}
+	}
+
+	/**
+	 * @return The key of a tile in the tiles map.
+	 */
+	private static Long tileKey(int column, int row) {
+		return (long) row << 32 | column;
+	}
+
 	/**
 	 * Handles displaying this object.
 	 * 
@@ -152,13 +451,26 @@ public class ImageDisplay extends JPanel implements Scrollable
 		int xEnd = currentX + num;
 		int yStart = currentY - num;
 		int yEnd = currentY + num;
-		int width = image.getWidth(this);
+		int width = imageWidth;
 		int maxX = width - 1;
-		int height = image.getHeight(this);
+		int height = imageHeight;
 		int maxY = height - 1;
 
-		// Draw the image
-		g.drawImage(image, 0, 0, this);
+		// Draw the part of the image being repainted.
+		Rectangle area = g.getClipBounds();
+		if (area == null)
+			area = new Rectangle(0, 0, width, height);
+		area = area.intersection(new Rectangle(0, 0, width, height));
+		if (isScaled())
+		{
+			if (!area.isEmpty())
+				paintTiles(g, area);
+			prefetchTiles();
+		}
+		else if (!area.isEmpty())
+			g.drawImage(image, area.x, area.y, area.x + area.width,
+					area.y + area.height, area.x, area.y, area.x + area.width,
+					area.y + area.height, this);
 
 		// Check if the current index is in the image.
 		if (currentX >= 0 && currentX < width &&
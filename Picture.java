@@ -1,6 +1,10 @@
 import java.awt.Color;
+import java.io.File;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntUnaryOperator;
 import java.lang.Math;
 
 /**
@@ -22,20 +26,6 @@ public class Picture extends SimplePicture {
     public static final int VERTICAL = 2;
     public static final int FORWARD_DIAGONAL = 3;
     public static final int BACKWARD_DIAGONAL = 4;
-    // Different Picture objects for the bitmaps used in ASCII art conversion.
-    private static Picture BMP_AMPERSAND;
-    private static Picture BMP_APOSTROPHE;
-    private static Picture BMP_AT;
-    private static Picture BMP_BAR;
-    private static Picture BMP_COLON;
-    private static Picture BMP_DOLLAR;
-    private static Picture BMP_DOT;
-    private static Picture BMP_EXCLAMATION;
-    private static Picture BMP_GRAVE;
-    private static Picture BMP_HASH;
-    private static Picture BMP_PERCENT;
-    private static Picture BMP_SEMICOLON;
-    private static Picture BMP_SPACE;
 
     //////////////////////////// Constructors /////////////////////////////////
     /**
@@ -97,6 +87,95 @@ public class Picture extends SimplePicture {
         return output;
     }
 
+    /**
+     * Creates a new Picture of the same size as this Picture, where every
+     * pixel is the result of applying the operation provided to the
+     * corresponding pixel of this Picture. The pixels are visited one row
+     * (scanline) at a time, in the order they are stored in the raster, and
+     * bands of rows may be processed on several threads at once by the
+     * RowBandExecutor; the operation must therefore be safe to call from
+     * several threads.
+     *
+     * @param operation The operation to apply to each color value.
+     * @return The new Picture.
+     */
+    Picture mapPixels(IntUnaryOperator operation) {
+        Picture newPicture = new Picture(this);
+        final int[] pixels = newPicture.getRasterData();
+        final int width = this.getWidth();
+
+        RowBandExecutor.forEachBand(width, this.getHeight(), (startY, endY) -> {
+            for (int i = startY * width; i < endY * width; i++) {
+                pixels[i] = operation.applyAsInt(pixels[i]) & 0x00ffffff;
+            }
+        });
+        return newPicture;
+    }
+
+    /**
+     * Applies a lookup table to the red, green, and blue components of every
+     * pixel. Any chain of per-component operations, composed into a single
+     * ChannelLut, costs one table lookup per component.
+     *
+     * @param lut The lookup table to apply.
+     *
+     * @return A new Picture with the lookup table applied.
+     */
+    public Picture applyLut(ChannelLut lut) {
+        return this.applyToRaster(lut::apply);
+    }
+
+    /**
+     * Creates a copy of this Picture and applies an operation to its whole
+     * raster, one band of rows at a time, possibly on several threads.
+     *
+     * @param operation The operation to apply to each band of the copy.
+     * @return The new Picture.
+     */
+    private Picture applyToRaster(PixelKernels.RasterOperation operation) {
+        Picture newPicture = new Picture(this);
+        final int[] pixels = newPicture.getRasterData();
+        final int width = this.getWidth();
+
+        RowBandExecutor.forEachBand(width, this.getHeight(), (startY, endY) -> {
+            operation.apply(pixels, startY * width, endY * width);
+        });
+        return newPicture;
+    }
+
+    /**
+     * Adds amounts to the color components of every pixel, with the vector
+     * backend of PixelKernels if it is available, and with a ChannelLut
+     * otherwise.
+     *
+     * @return A new Picture with the amounts added.
+     */
+    private Picture addToChannels(final int red, final int green, final int blue) {
+        final PixelKernels kernels = PixelKernels.get();
+        if (kernels == PixelKernels.scalar()) {
+            return this.applyLut(ChannelLut.add(red, green, blue));
+        }
+        return this.applyToRaster((pixels, from, to) ->
+                kernels.add(pixels, from, to, red, green, blue));
+    }
+
+    /**
+     * Starts a pipeline of color operations on this Picture. The operations
+     * recorded on the pipeline are only carried out when its run method is
+     * called, and then all of them are applied in a single pass, producing
+     * one new Picture. For example,
+     *
+     * picture.pointOps().grayscale().lighten(30).addBlue(10).run()
+     *
+     * gives the same result as picture.grayscale().lighten(30).addBlue(10),
+     * without creating the two intermediate Pictures.
+     *
+     * @return A new, empty pipeline reading from this Picture.
+     */
+    public PointOpPipeline pointOps() {
+        return new PointOpPipeline(this);
+    }
+
     /////////////////////// PROJECT 1 BEGINS HERE /////////////////////////////
 
     /*
@@ -116,17 +195,8 @@ public class Picture extends SimplePicture {
      * @return A new Picture that is the grayscale version of this Picture.
      */
     public Picture grayscale() {
-        Picture newPicture = new Picture(this);
-
-        int pictureHeight = this.getHeight();
-        int pictureWidth = this.getWidth();
-
-        for (int x = 0; x < pictureWidth; x++) {
-            for (int y = 0; y < pictureHeight; y++) {
-                newPicture.setPixelToGray(x, y);
-            }
-        }
-        return newPicture;
+        final PixelKernels kernels = PixelKernels.get();
+        return this.applyToRaster((pixels, from, to) -> kernels.gray(pixels, from, to));
     }
 
     /**
@@ -136,11 +206,17 @@ public class Picture extends SimplePicture {
      * @param y The y-coordinate of the pixel to be set to gray.
      */
     private void setPixelToGray(int x, int y) {
-        Pixel currentPixel = this.getPixel(x, y);
-        int average = currentPixel.getAverage();
-        currentPixel.setRed(average);
-        currentPixel.setGreen(average);
-        currentPixel.setBlue(average);
+        this.setBasicPixel(x, y, toGray(this.getBasicPixel(x, y)));
+    }
+
+    /**
+     * @param value A color value.
+     * @return The gray color value whose red, green, and blue components are
+     * all the average of the components of the value provided.
+     */
+    static int toGray(int value) {
+        int average = Pixel.getAverage(value);
+        return Pixel.makeColor(Pixel.getAlpha(value), average, average, average);
     }
 
     /**
@@ -229,17 +305,11 @@ public class Picture extends SimplePicture {
      * @return A new Picture that is the photonegative version of this Picture.
      */
     public Picture negate() {
-        Picture newPicture = new Picture(this);
-
-        int pictureHeight = this.getHeight();
-        int pictureWidth = this.getWidth();
-
-        for (int x = 0; x < pictureWidth; x++) {
-            for (int y = 0; y < pictureHeight; y++) {
-                newPicture.setPixelToNegative(x, y);
-            }
+        final PixelKernels kernels = PixelKernels.get();
+        if (kernels == PixelKernels.scalar()) {
+            return this.applyLut(ChannelLut.negate());
         }
-        return newPicture;
+        return this.applyToRaster((pixels, from, to) -> kernels.negate(pixels, from, to));
         // REPLACE THE CODE BELOW WITH YOUR OWN.
         // return new Picture(this);
     }
@@ -249,11 +319,16 @@ public class Picture extends SimplePicture {
      * argument and subtract all RGB valus from 255.
      */
     private void setPixelToNegative(int x, int y) {
-        Pixel currentPixel = this.getPixel(x, y);
+        this.setBasicPixel(x, y, toNegative(this.getBasicPixel(x, y)));
+    }
 
-        currentPixel.setRed(255 - currentPixel.getRed());
-        currentPixel.setGreen(255 - currentPixel.getGreen());
-        currentPixel.setBlue(255 - currentPixel.getBlue());
+    /**
+     * @param value A color value.
+     * @return The photonegative of the color value provided.
+     */
+    static int toNegative(int value) {
+        return Pixel.makeColor(Pixel.getAlpha(value), 255 - Pixel.getRed(value),
+                255 - Pixel.getGreen(value), 255 - Pixel.getBlue(value));
     }
 
     /**
@@ -288,17 +363,7 @@ public class Picture extends SimplePicture {
      * by the lightenAmount.
      */
     public Picture lighten(int lightenAmount) {
-        Picture newPicture = new Picture(this);
-
-        int pictureHeight = this.getHeight();
-        int pictureWidth = this.getWidth();
-
-        for (int x = 0; x < pictureWidth; x++) {
-            for (int y = 0; y < pictureHeight; y++) {
-                newPicture.setPixelToLighten(x, y, lightenAmount);
-            }
-        }
-        return newPicture;
+        return this.addToChannels(lightenAmount, lightenAmount, lightenAmount);
         // REPLACE THE CODE BELOW WITH YOUR OWN.
         // return new Picture(this);
     }
@@ -309,16 +374,21 @@ public class Picture extends SimplePicture {
      * values cap at 0 to 255 using else if statements.
      */
     private void setPixelToLighten(int x, int y, int amount) {
-        Pixel currentPixel = this.getPixel(x, y);
+        this.setBasicPixel(x, y, toLighter(this.getBasicPixel(x, y), amount));
+    }
 
-        int newRed = currentPixel.getRed() + amount;
-        int newGreen = currentPixel.getGreen() + amount;
-        int newBlue = currentPixel.getBlue() + amount;
+    /**
+     * @param value A color value.
+     * @param amount The amount to add to each color component.
+     * @return The color value lightened by amount.
+     */
+    static int toLighter(int value, int amount) {
+        int newRed = Pixel.getRed(value) + amount;
+        int newGreen = Pixel.getGreen(value) + amount;
+        int newBlue = Pixel.getBlue(value) + amount;
 
-        //the set commands automatically ensure values between 0 and 255
-        currentPixel.setRed(newRed);
-        currentPixel.setGreen(newGreen);
-        currentPixel.setBlue(newBlue);
+        //makeColor automatically ensures values between 0 and 255
+        return Pixel.makeColor(Pixel.getAlpha(value), newRed, newGreen, newBlue);
     }
 
     /**
@@ -374,17 +444,7 @@ public class Picture extends SimplePicture {
      * by the darkenenAmount.
      */
     public Picture darken(int darkenAmount) {
-        Picture newPicture = new Picture(this);
-
-        int pictureHeight = this.getHeight();
-        int pictureWidth = this.getWidth();
-
-        for (int x = 0; x < pictureWidth; x++) {
-            for (int y = 0; y < pictureHeight; y++) {
-                newPicture.setPixelToDarken(x, y, darkenAmount);
-            }
-        }
-        return newPicture;
+        return this.addToChannels(-darkenAmount, -darkenAmount, -darkenAmount);
         // REPLACE THE CODE BELOW WITH YOUR OWN.
         // return new Picture(this);
     }
@@ -395,15 +455,20 @@ public class Picture extends SimplePicture {
      * values cap at 0 to 255 using else if statements.
      */
     private void setPixelToDarken(int x, int y, int amount) {
-        Pixel currentPixel = this.getPixel(x, y);
+        this.setBasicPixel(x, y, toDarker(this.getBasicPixel(x, y), amount));
+    }
 
-        int newRed = currentPixel.getRed() - amount;
-        int newGreen = currentPixel.getGreen() - amount;
-        int newBlue = currentPixel.getBlue() - amount;
+    /**
+     * @param value A color value.
+     * @param amount The amount to subtract from each color component.
+     * @return The color value darkened by amount.
+     */
+    static int toDarker(int value, int amount) {
+        int newRed = Pixel.getRed(value) - amount;
+        int newGreen = Pixel.getGreen(value) - amount;
+        int newBlue = Pixel.getBlue(value) - amount;
 
-        currentPixel.setRed(newRed);
-        currentPixel.setGreen(newGreen);
-        currentPixel.setBlue(newBlue);
+        return Pixel.makeColor(Pixel.getAlpha(value), newRed, newGreen, newBlue);
     }
 
     /**
@@ -459,17 +524,7 @@ public class Picture extends SimplePicture {
      * by amount.
      */
     public Picture addBlue(int amount) {
-        Picture newPicture = new Picture(this);
-
-        int pictureHeight = this.getHeight();
-        int pictureWidth = this.getWidth();
-
-        for (int x = 0; x < pictureWidth; x++) {
-            for (int y = 0; y < pictureHeight; y++) {
-                newPicture.setPixelToAddBlue(x, y, amount);
-            }
-        }
-        return newPicture;
+        return this.addToChannels(0, 0, amount);
         // REPLACE THE CODE BELOW WITH YOUR OWN.
         // return new Picture(this);
     }
@@ -480,11 +535,18 @@ public class Picture extends SimplePicture {
      * to 255 using else if statements.
      */
     private void setPixelToAddBlue(int x, int y, int amount) {
-        Pixel currentPixel = this.getPixel(x, y);
+        this.setBasicPixel(x, y, toMoreBlue(this.getBasicPixel(x, y), amount));
+    }
 
-        int newBlue = currentPixel.getBlue() + amount;
+    /**
+     * @param value A color value.
+     * @param amount The amount to add to the blue component.
+     * @return The color value with its blue component increased by amount.
+     */
+    static int toMoreBlue(int value, int amount) {
+        int newBlue = Pixel.getBlue(value) + amount;
 
-        currentPixel.setBlue(newBlue);
+        return Pixel.makeColor(Pixel.getAlpha(value), Pixel.getRed(value), Pixel.getGreen(value), newBlue);
     }
 
     /**
@@ -533,17 +595,7 @@ public class Picture extends SimplePicture {
      * by amount.
      */
     public Picture addRed(int amount) {
-        Picture newPicture = new Picture(this);
-
-        int pictureHeight = this.getHeight();
-        int pictureWidth = this.getWidth();
-
-        for (int x = 0; x < pictureWidth; x++) {
-            for (int y = 0; y < pictureHeight; y++) {
-                newPicture.setPixelToAddRed(x, y, amount);
-            }
-        }
-        return newPicture;
+        return this.addToChannels(amount, 0, 0);
         // REPLACE THE CODE BELOW WITH YOUR OWN.
         // return new Picture(this);
     }
@@ -554,11 +606,18 @@ public class Picture extends SimplePicture {
      * to 255 using else if statements.
      */
     private void setPixelToAddRed(int x, int y, int amount) {
-        Pixel currentPixel = this.getPixel(x, y);
+        this.setBasicPixel(x, y, toMoreRed(this.getBasicPixel(x, y), amount));
+    }
 
-        int newRed = currentPixel.getRed() + amount;
+    /**
+     * @param value A color value.
+     * @param amount The amount to add to the red component.
+     * @return The color value with its red component increased by amount.
+     */
+    static int toMoreRed(int value, int amount) {
+        int newRed = Pixel.getRed(value) + amount;
 
-        currentPixel.setRed(newRed);
+        return Pixel.makeColor(Pixel.getAlpha(value), newRed, Pixel.getGreen(value), Pixel.getBlue(value));
     }
 
     /**
@@ -608,17 +667,7 @@ public class Picture extends SimplePicture {
      * by amount.
      */
     public Picture addGreen(int amount) {
-        Picture newPicture = new Picture(this);
-
-        int pictureHeight = this.getHeight();
-        int pictureWidth = this.getWidth();
-
-        for (int x = 0; x < pictureWidth; x++) {
-            for (int y = 0; y < pictureHeight; y++) {
-                newPicture.setPixelToAddGreen(x, y, amount);
-            }
-        }
-        return newPicture;
+        return this.addToChannels(0, amount, 0);
         // REPLACE THE CODE BELOW WITH YOUR OWN.
         // return new Picture(this);
     }
@@ -629,11 +678,18 @@ public class Picture extends SimplePicture {
      * cap at 0 to 255 using else if statements.
      */
     private void setPixelToAddGreen(int x, int y, int amount) {
-        Pixel currentPixel = this.getPixel(x, y);
+        this.setBasicPixel(x, y, toMoreGreen(this.getBasicPixel(x, y), amount));
+    }
 
-        int newGreen = currentPixel.getGreen() + amount;
+    /**
+     * @param value A color value.
+     * @param amount The amount to add to the green component.
+     * @return The color value with its green component increased by amount.
+     */
+    static int toMoreGreen(int value, int amount) {
+        int newGreen = Pixel.getGreen(value) + amount;
 
-        currentPixel.setGreen(newGreen);
+        return Pixel.makeColor(Pixel.getAlpha(value), Pixel.getRed(value), newGreen, Pixel.getBlue(value));
     }
 
     /**
@@ -695,18 +751,26 @@ public class Picture extends SimplePicture {
         int newPictureWidth = Math.min(this.getWidth(), background.getWidth());
 
         Picture newPicture = new Picture(newPictureWidth, newPictureHeight);
-        Pixel refPixel = this.getPixel(xRef, yRef);
-        Color refColor = refPixel.getColor();
-
-        for (int x = 0; x < newPictureWidth; x++) {
-            for (int y = 0; y < newPictureHeight; y++) {
-                Pixel origPixel = this.getPixel(x, y);
-                Color origColor = origPixel.getColor();
-                Pixel bgPixel = background.getPixel(x, y);
-                Color bgColor = bgPixel.getColor();
-                newPicture.setPixelToChromaKey(x, y, threshold, refColor, origColor, bgColor);
+        int refValue = this.getBasicPixel(xRef, yRef);
+        final int originalWidth = this.getWidth();
+        final int backgroundWidth = background.getWidth();
+        final int[] original = this.getRasterForReading();
+        final int[] backdrop = background.getRasterForReading();
+        final int[] target = newPicture.getRasterData();
+
+        //each band of rows is independent, so they can run in parallel.
+        //the bands write the raster directly instead of going through
+        //setBasicPixel, so no band touches the modification tracking.
+        RowBandExecutor.forEachBand(newPictureWidth, newPictureHeight, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                for (int x = 0; x < newPictureWidth; x++) {
+                    int origValue = original[y * originalWidth + x];
+                    int bgValue = backdrop[y * backgroundWidth + x];
+                    target[y * newPictureWidth + x] =
+                            Pixel.isWithinTruncatedDistance(refValue, origValue, threshold) ? bgValue : origValue;
+                }
             }
-        }
+        });
         return newPicture;
         /*
          * REPLACE THE CODE BELOW WITH YOUR OWN.
@@ -720,14 +784,11 @@ public class Picture extends SimplePicture {
      * distance between current pixel and reference color is within threshold,
      * return true. else false.
      */
-    private void setPixelToChromaKey(int x, int y, int threshold, Color refColor, Color origColor, Color bgColor) {
-        Pixel currentPixel = this.getPixel(x, y);
-        double distance = currentPixel.colorDistance(refColor, origColor);
-
-        if ((int) distance <= threshold) {
-            currentPixel.setColor(bgColor);
+    private void setPixelToChromaKey(int x, int y, int threshold, int refValue, int origValue, int bgValue) {
+        if (Pixel.isWithinTruncatedDistance(refValue, origValue, threshold)) {
+            this.setBasicPixel(x, y, bgValue);
         } else {
-            currentPixel.setColor(origColor);
+            this.setBasicPixel(x, y, origValue);
         }
     }
 
@@ -751,7 +812,7 @@ public class Picture extends SimplePicture {
         Color origColor = focalPixel.getColor();
         //Color refColor = Color.blue;
 
-        bg.setPixelToChromaKey(10, 10, 100, origColor, origColor, bgColor); //replace color of original with green
+        bg.setPixelToChromaKey(10, 10, 100, origColor.getRGB(), origColor.getRGB(), bgColor.getRGB()); //replace color of original with green
 
         //adjust comparison copy manually, so we can check final result
         colorCorrect = focalPixel.getColor().equals(bgColor);
@@ -773,33 +834,29 @@ public class Picture extends SimplePicture {
      * @return A new Picture that is the rotated version of this Picture.
      */
     public Picture rotate(int rotations) {
-        int shortRotations = Math.abs(rotations) % 4;
+        return this.transform(DihedralTransform.forRotation(rotations));
+    }
 
-        if (shortRotations == 0) {
+    /**
+     * Applies one of the eight rotations and flips of the pixel grid in a
+     * single pass over a new Picture.
+     *
+     * @param transform The rotation or flip to apply.
+     *
+     * @return A new Picture that is the transformed version of this Picture.
+     */
+    Picture transform(DihedralTransform transform) {
+        if (transform == DihedralTransform.IDENTITY) {
             return new Picture(this);
-        } else {
-            int pictureHeight = this.getHeight();
-            int pictureWidth = this.getWidth();
-            Picture rotatedPicture = new Picture(pictureHeight, pictureWidth);
-
-            if (rotations > 0) {
-                for (int x = 0; x < pictureWidth; x++) {
-                    for (int y = 0; y < pictureHeight; y++) {
-                        rotatedPicture.applyRotateTransformationMatrix(x, y, this, true);
-                    }
-                }
-                return rotatedPicture.rotate(rotations - 1);
-            } else {
-                for (int x = 0; x < pictureWidth; x++) {
-                    for (int y = 0; y < pictureHeight; y++) {
-                        rotatedPicture.applyRotateTransformationMatrix(x, y, this, false);
-                    }
-                }
-                return rotatedPicture.rotate(rotations + 1);
-            }
         }
-        // REPLACE THE CODE BELOW WITH YOUR OWN.
-        // return new Picture(this);
+        int pictureWidth = this.getWidth();
+        int pictureHeight = this.getHeight();
+        Picture transformedPic = new Picture(
+                transform.getTargetWidth(pictureWidth, pictureHeight),
+                transform.getTargetHeight(pictureWidth, pictureHeight));
+        transform.apply(this.getRasterForReading(), pictureWidth, pictureHeight,
+                transformedPic.getRasterData());
+        return transformedPic;
     }
 
     /**
@@ -809,16 +866,12 @@ public class Picture extends SimplePicture {
      * produced and a new pixel is added to that location
      */
     public void applyRotateTransformationMatrix(int x, int y, Picture originalPicture, boolean clockwise) {
-        Pixel currentPixel = originalPicture.getPixel(x, y);
-        Color currentColor = currentPixel.getColor();
-        Pixel mappedPixel;
+        int currentValue = originalPicture.getBasicPixel(x, y);
 
         if (clockwise) {
-            mappedPixel = this.getPixel(originalPicture.getHeight() - y - 1, x);
-            mappedPixel.setColor(currentColor);
+            this.setBasicPixel(originalPicture.getHeight() - y - 1, x, currentValue);
         } else {
-            mappedPixel = this.getPixel(y, originalPicture.getWidth() - x - 1);
-            mappedPixel.setColor(currentColor);
+            this.setBasicPixel(y, originalPicture.getWidth() - x - 1, currentValue);
         }
     }
     
@@ -870,84 +923,31 @@ public class Picture extends SimplePicture {
      * @return A new Picture flipped about the axis provided.
      */
 	public Picture flip(int axis) {
-        
-		int pictureHeight = this.getHeight();
-		int pictureWidth = this.getWidth();
-		int mirroredXcoord; 
-		int mirroredYcoord; 
-		Picture flippedPic = null; 
-        
-		if (axis==Picture.HORIZONTAL) {
-			//horizontal axis means vertical mirroring 
-            flippedPic = new Picture(pictureWidth, pictureHeight);
-			for(int y = 0; y < pictureHeight; y++){
-				for(int x = 0; x < pictureWidth; x++) {	
-					flippedPic.flipPixelHorizontalAxis(x,y,this); 
-				}	
-			}
-		}
-        
-		else if (axis == Picture.VERTICAL) {
-			//vertical axis means horizontal mirroring 
-            flippedPic = new Picture(pictureWidth, pictureHeight);
-			for(int x = 0; x < pictureWidth; x++) {
-				for(int y = 0; y < pictureHeight; y++) {	//y coordinates are identical 
-					flippedPic.flipPixelVerticalAxis(x, y, this); 
-				}
-			}
-		}
-        
-		else if (axis == Picture.FORWARD_DIAGONAL) {
-			//forward diagonal
-			//ROTATE ONCE RIGHT, then flip on HORIZONTAL AXIS (e.g. vertical mirroring) 
-			Picture rotatedPic = this.rotate(1); //rotate the picture clockwise once 
-			int newWidth = rotatedPic.getWidth(); //get the width
-			int newHeight = rotatedPic.getHeight();  //get the height 
-			flippedPic = new Picture(newWidth, newHeight); //make a new picture 
-            
-			for(int y = 0; y < newHeight; y++){
-				for(int x = 0; x < newWidth; x++) {	//x coordinates are identical 
-                    flippedPic.flipPixelHorizontalAxis(x, y, rotatedPic); 
-				}	
-			}
-		}
-        
-		else if (axis == Picture.BACKWARD_DIAGONAL) {
-			//backward diagonal
-			//ROTATE ONCE RIGHT, then flip on VERTICAL AXIS (e.g. horizontal mirroring) 
-			Picture rotatedPic = this.rotate(1); //rotate the picture clockwise once 
-			int newWidth = rotatedPic.getWidth();  //get the width
-			int newHeight = rotatedPic.getHeight();  //get the height
-			flippedPic = new Picture(newWidth, newHeight); //make a new picture 
-            
-			for(int x = 0; x < newWidth; x++) {
-				for(int y = 0; y < newHeight; y++) {	//y coordinates are identical 
-					flippedPic.flipPixelVerticalAxis(x, y, rotatedPic); 
-				}
-			}
+		if (axis == Picture.HORIZONTAL) {
+			return this.transform(DihedralTransform.FLIP_HORIZONTAL);
+		} else if (axis == Picture.VERTICAL) {
+			return this.transform(DihedralTransform.FLIP_VERTICAL);
+		} else if (axis == Picture.FORWARD_DIAGONAL) {
+			return this.transform(DihedralTransform.FLIP_FORWARD_DIAGONAL);
+		} else if (axis == Picture.BACKWARD_DIAGONAL) {
+			return this.transform(DihedralTransform.FLIP_BACKWARD_DIAGONAL);
 		}
-        
-        
-		return flippedPic; //new Picture(this);
+		return null;
 	}
     
     //HELPER METHODS for flip
 	public void flipPixelHorizontalAxis(int x, int y, Picture originalPicture){
 		int mirroredYcoord = originalPicture.getHeight() - y - 1; 			//mirror the y coordinate
-		Pixel currentPixel = originalPicture.getPixel(x, y); //get the current pixel we're going to mirror
-		Color originalColor = currentPixel.getColor();  //get original color 
+		int originalValue = originalPicture.getBasicPixel(x, y); //get the value of the pixel we're going to mirror
 		
-		Pixel mirrorPixel = this.getPixel(x, mirroredYcoord);  //grab mirrored pixel
-		mirrorPixel.setColor(originalColor); 	//set the mirrored pixel to the original pixel
+		this.setBasicPixel(x, mirroredYcoord, originalValue); 	//set the mirrored pixel to the original pixel
 	}
 	
 	public void flipPixelVerticalAxis(int x, int y, Picture originalPicture) {
 		int mirroredXcoord = originalPicture.getWidth() - x - 1; //mirror the x coordinate
-		Pixel currentPixel = originalPicture.getPixel(x, y); //get the current pixel we're going to mirror
-		Color originalColor = currentPixel.getColor();  //get original color 
+		int originalValue = originalPicture.getBasicPixel(x, y); //get the value of the pixel we're going to mirror
 		
-		Pixel mirrorPixel = this.getPixel(mirroredXcoord, y);  //grab mirrored pixel
-		mirrorPixel.setColor(originalColor); 	//set the mirrored pixel to the original pixel
+		this.setBasicPixel(mirroredXcoord, y, originalValue); 	//set the mirrored pixel to the original pixel
 	}
 	
 	//helper test methods
@@ -1028,98 +1028,79 @@ public class Picture extends SimplePicture {
      */
 	public Picture showEdges(int threshold) {
 
-		//I'm going to hard-code in the rules to make this more efficient, 
-		//Instead of doing if/else checks every pixel. 
 		int pictureWidth = this.getWidth(); 
 		int pictureHeight = this.getHeight(); 
 		Picture edgesPicture = new Picture(pictureWidth, pictureHeight); //build new picture
+		int[] originalRaster = this.getRasterForReading(); //read the original directly, no Pixel objects 
+		int[] edgesRaster = edgesPicture.getRasterData(); //marks the whole new picture once, on this thread
 
-		Pixel focalPixel; //the pixel we will replace in the new picture
-		Pixel currentOriginalPixel; //the pixel of interest in the original image
-		Pixel comparisonPixelLeft;  	//the pixel to the left
-		Pixel comparisonPixelNorth; 	//the pixel to the North 
-
-		//initialize pixel 0, 0 
-		edgesPicture.setPixelToWhite(0,0); 
-
-		//Scan top row of pixels
-		int y = 0; 
-		for (int x = 1; x <pictureWidth; x++) {
-			currentOriginalPixel = this.getPixel(x, y);
-			focalPixel = edgesPicture.getPixel(x,y); //get corresponding pixel
-			comparisonPixelLeft = this.getPixel(x-1,y); 
-			Color origColor = currentOriginalPixel.getColor(); 
-			Color refColor = comparisonPixelLeft.getColor(); 
-			double distance = currentOriginalPixel.colorDistance(refColor, origColor);
-
-			if ((int) distance > threshold) {
-				edgesPicture.setPixelToBlack(x,y); 
-			} else {
-				edgesPicture.setPixelToWhite(x,y); 
+		//every pixel only depends on the original image, so bands of rows can run in parallel
+		RowBandExecutor.forEachBand(pictureWidth, pictureHeight, (startY, endY) -> {
+			for (int y = startY; y < endY; y++) {
+				showEdgesRow(originalRaster, edgesRaster, pictureWidth, y, threshold); 
 			}
-		}
+		});
 
-		//Scan left column of pixels
-		int x = 0; 
-		for (int y1 = 1; y1 <pictureHeight; y1++) {
-			currentOriginalPixel = this.getPixel(x, y1);
-			focalPixel = edgesPicture.getPixel(x, y1); 
-			comparisonPixelNorth = this.getPixel(x,y1-1); 
-			Color origColor = currentOriginalPixel.getColor(); 
-			Color refColor = comparisonPixelNorth.getColor(); 
-			double distance = currentOriginalPixel.colorDistance(refColor, origColor);
-
-			if ((int) distance > threshold) {
-				edgesPicture.setPixelToBlack(x,y1);
-			} else {
-				edgesPicture.setPixelToWhite(x,y1);  
+		return edgesPicture; //new Picture(this);
+	}
+
+	//HELPER METHODS FOR SHOW_EDGDES
+	//fills row y of edgesRaster with the edges of row y of originalRaster.
+	//I'm going to hard-code in the rules to make this more efficient, 
+	//Instead of doing if/else checks every pixel. 
+	//writes the raster directly so parallel rows never touch the modification tracking.
+	private static void showEdgesRow(int[] originalRaster, int[] edgesRaster, int pictureWidth, int y, int threshold) {
+		int row = y * pictureWidth; 		//index of the first pixel in row y
+		int northRow = row - pictureWidth; 	//index of the first pixel in the row to the North
+
+		if (y == 0) {
+			//initialize pixel 0, 0 
+			edgesRaster[0] = EDGE_WHITE; 
+
+			//Scan top row of pixels, they only have a pixel to the left
+			for (int x = 1; x <pictureWidth; x++) {
+				if (!Pixel.isWithinTruncatedDistance(originalRaster[row + x - 1], originalRaster[row + x], threshold)) {
+					edgesRaster[row + x] = EDGE_BLACK; 
+				} else {
+					edgesRaster[row + x] = EDGE_WHITE; 
+				}
 			}
+			return; 
 		}
 
-		//now iterate through the rest of the image, now that the edge cases are covered
-		for (int x2 = 1; x2 < pictureWidth; x2++) {
-			for (int y2 = 1; y2 < pictureHeight; y2++) {
-				currentOriginalPixel = this.getPixel(x2, y2); 
-				focalPixel = edgesPicture.getPixel(x2, y2); 
-				comparisonPixelNorth = this.getPixel(x2,y2-1); 
-				comparisonPixelLeft = this.getPixel(x2-1, y2); 
-
-				Color origColor = currentOriginalPixel.getColor(); 
-				Color northColor = comparisonPixelNorth.getColor(); 
-				Color leftColor = comparisonPixelLeft.getColor(); 
-
-				double distanceNorth = currentOriginalPixel.colorDistance(northColor, origColor); 
-				double distanceLeft = currentOriginalPixel.colorDistance(leftColor, origColor); 
-
-				if ((int) distanceNorth > threshold || (int) distanceLeft > threshold) {
-					edgesPicture.setPixelToBlack(x2,y2); 
-				} else {
-					edgesPicture.setPixelToWhite(x2,y2); 
+		//left column pixel, it only has a pixel to the North
+		if (!Pixel.isWithinTruncatedDistance(originalRaster[northRow], originalRaster[row], threshold)) {
+			edgesRaster[row] = EDGE_BLACK;
+		} else {
+			edgesRaster[row] = EDGE_WHITE;  
+		}
 
-				}
+		//now iterate through the rest of the row, now that the edge case is covered
+		for (int x = 1; x < pictureWidth; x++) {
+			int origValue = originalRaster[row + x]; 
+			int northValue = originalRaster[northRow + x]; 
+			int leftValue = originalRaster[row + x - 1]; 
 
+			if (!Pixel.isWithinTruncatedDistance(northValue, origValue, threshold)
+					|| !Pixel.isWithinTruncatedDistance(leftValue, origValue, threshold)) {
+				edgesRaster[row + x] = EDGE_BLACK; 
+			} else {
+				edgesRaster[row + x] = EDGE_WHITE; 
 			}
 		}
-
-		return edgesPicture; //new Picture(this);
 	}
 
-	//HELPER METHODS FOR SHOW_EDGDES
+	//white and black as stored in the raster, which keeps no alpha
+	private static final int EDGE_WHITE = 0x00ffffff;
+	private static final int EDGE_BLACK = 0x00000000;
+
 	//adjusts a pixel to 255 alpha, all white
 	private void setPixelToWhite(int x, int y) {
-		Pixel pixel = this.getPixel(x, y); 
-		pixel.setRed(255); 
-		pixel.setGreen(255); 
-		pixel.setBlue(255); 
-		pixel.setAlpha(255); //set it all to white
+		this.setBasicPixel(x, y, 0xffffffff); //set it all to white, alpha 255
 	}
 	//adjusts a pixel to 255 alpha, all black
 	private void setPixelToBlack (int x, int y) {
-		Pixel pixel = this.getPixel(x,y); 
-		pixel.setRed(0); 
-		pixel.setGreen(0); 
-		pixel.setBlue(0); 
-		pixel.setAlpha(255); //set it all to black
+		this.setBasicPixel(x, y, 0xff000000); //set it all to black, alpha 255
 	}
 	
 	//HELPER TEST
@@ -1174,77 +1155,79 @@ public class Picture extends SimplePicture {
      * size 10 pixels by 20 pixels. The following characters should be used,
      * depending on the average value obtained:
      *
-     * 0 to 18: # (Picture.BMP_POUND) 19 to 37: @ (Picture.BMP_AT) 38 to 56: &
-     * (Picture.BMP_AMPERSAND) 57 to 75: $ (Picture.BMP_DOLLAR) 76 to 94: %
-     * (Picture.BMP_PERCENT) 95 to 113: | (Picture.BMP_BAR) 114 to 132: !
-     * (Picture.BMP_EXCLAMATION) 133 to 151: ; (Picture.BMP_SEMICOLON) 152 to
-     * 170: : (Picture.BMP_COLON) 171 to 189: ' (Picture.BMP_APOSTROPHE) 190 to
-     * 208: ` (Picture.BMP_GRAVE) 209 to 227: . (Picture.BMP_DOT) 228 to 255:
-     * (Picture.BMP_SPACE)
+     * 0 to 18: # (hash.bmp) 19 to 37: @ (at.bmp) 38 to 56: & (ampersand.bmp)
+     * 57 to 75: $ (dollar.bmp) 76 to 94: % (percent.bmp) 95 to 113: |
+     * (bar.bmp) 114 to 132: ! (exclamation.bmp) 133 to 151: ; (semicolon.bmp)
+     * 152 to 170: : (colon.bmp) 171 to 189: ' (apostrophe.bmp) 190 to 208: `
+     * (grave.bmp) 209 to 227: . (dot.bmp) 228 to 255: (space.bmp)
      *
-     * We provide a getAsciiPic method to obtain the Picture object
-     * corresponding to a character, given any of the static Strings mentioned
-     * above.
+     * The characters are loaded once from the class path and shared by every
+     * Picture through AsciiGlyphs.
      *
      * Note that the resultant Picture should be the exact same size as the
      * original Picture; this might involve characters being partially copied to
      * the final Picture.
      */
     public Picture convertToAscii() {
-        Picture ASCIIPicture = new Picture(this.grayscale());
-        
-        for (int i = 0; i < ASCIIPicture.getWidth(); i += 10){
-            for (int j = 0; j < ASCIIPicture.getHeight(); j += 20){
-                ASCIIPicture.setToAsciiChar(i, j);
+        final Picture ASCIIPicture = new Picture(this);
+        final int cellWidth = AsciiGlyphs.WIDTH;
+        final int cellHeight = AsciiGlyphs.HEIGHT;
+        final int cellColumns = (this.getWidth() + cellWidth - 1) / cellWidth;
+        final int cellRows = (this.getHeight() + cellHeight - 1) / cellHeight;
+        final int pictureWidth = this.getWidth();
+        final int pictureHeight = this.getHeight();
+        final int[] raster = ASCIIPicture.getRasterData();
+
+        // Every row of characters only touches its own 20 rows of pixels, and
+        // the raster is fetched (and marked modified) once, before the bands.
+        RowBandExecutor.forEachBand(cellColumns * cellWidth * cellHeight, cellRows,
+                (startRow, endRow) -> {
+            for (int row = startRow; row < endRow; row++) {
+                for (int column = 0; column < cellColumns; column++) {
+                    setToAsciiChar(raster, pictureWidth, pictureHeight,
+                            column * cellWidth, row * cellHeight);
+                }
             }
-        }
-        
+        });
+
         return ASCIIPicture;
 
     }
     
     /*
-     * takes in (x, y) of the currently calculated boundary. calculates the  
-     * average bounded the currently iterated 10 x 20 area. looks up the
-     * ASCII "library" function based on the average and starts painting the
-     * ASCII image. if statement checks and reinitializes boundary if too close
-     * to the edge.
+     * takes in (x, y) of the top left corner of a 10 x 20 cell. averages the
+     * gray values of the cell straight from the raster, looks up the ASCII
+     * character for that average and copies it over the cell one scanline at
+     * a time. cells at the right and bottom edges are clipped to the picture.
      */
     public void setToAsciiChar(int x, int y){
-        int width = x + 10;
-        int height = y + 20;
-        int boundedAverage = 0;
-        int count = 0;
-        Pixel greyPixel;
-        
-        if ((this.getWidth() - x) < 10){
-            width = this.getWidth() - x;
-        }
-        if((this.getHeight() - y) < 20){
-            height = this.getHeight() - y;
-        }
+        setToAsciiChar(this.getRasterData(), this.getWidth(), this.getHeight(), x, y);
+    }
+
+    /*
+     * does the work of setToAsciiChar(x, y) on a raster of the given size.
+     * it never touches the modification tracking, so convertToAscii can call
+     * it from parallel bands.
+     */
+    private static void setToAsciiChar(int[] raster, int pictureWidth, int pictureHeight, int x, int y){
+        int width = Math.min(AsciiGlyphs.WIDTH, pictureWidth - x);
+        int height = Math.min(AsciiGlyphs.HEIGHT, pictureHeight - y);
         
-        //calculates the 10x20 bounded average and paints the respective ascii
-        // pic onto this
-        for(int i = x; i < width; i++){
-            for(int j = y; j < height; j++){
-                greyPixel = this.getPixel(i, j);
-                boundedAverage += greyPixel.getAverage();
-                count++;
+        //calculates the bounded average of the gray values of the cell
+        int boundedAverage = 0;
+        for(int j = y; j < y + height; j++){
+            int rowStart = j * pictureWidth;
+            for(int i = x; i < x + width; i++){
+                boundedAverage += Pixel.getAverage(raster[rowStart + i]);
             }
         }
+        boundedAverage = boundedAverage / (width * height);
         
-        boundedAverage = boundedAverage / (count);
-        
-        //looks up the library
-        Picture ASCIICharacter = getAsciiPic(boundedAverage);
-
-        for(int i = x; i < width; i++){
-            for(int j = y; j < height; j++){
-                greyPixel = this.getPixel(i, j);
-                Pixel ASCIIPixel = ASCIICharacter.getPixel(i - x, j - y);
-                greyPixel.setColor(ASCIIPixel.getColor());
-            }
+        //looks up the character and paints it onto this
+        AsciiGlyphs glyphs = AsciiGlyphs.getInstance();
+        int glyph = glyphs.glyphForGray(boundedAverage);
+        for(int j = 0; j < height; j++){
+            glyphs.copyRow(glyph, j, raster, (y + j) * pictureWidth + x, width);
         }
     }
     
@@ -1267,80 +1250,98 @@ public class Picture extends SimplePicture {
      * a blurring square of size (2 * threshold) + 1.
      */
     public Picture blur(int blurThreshold) {
-    	Picture originalPic = this; 
-        Picture blurryPic = new Picture(this.getWidth(), this.getHeight());  //make a blank canvas
-        Pixel focalPixel; 
-
-        for(int x=0; x<this.getWidth(); x++){
-        	for(int y=0; y<this.getHeight(); y++) {
-        		focalPixel = blurryPic.getPixel(x,y); 
-        		focalPixel.setColor(getBlurColor(originalPic, x, y, blurThreshold)); 
-        	}
-        }
-        
-        
-        //now I need to build an array of x and y coordinates for all of the pixels. 
-        //I must ignore pixels that fall off the grid. 
-        
-        
-        return blurryPic; 
+        final int width = this.getWidth();
+        final int height = this.getHeight();
+        final int radius = Math.max(0, blurThreshold);
+        final int[] source = this.getRasterForReading();
+        Picture blurryPic = new Picture(width, height);  //make a blank canvas
+        final int[] target = blurryPic.getRasterData();
+
+        /*
+         * Instead of adding up the whole square for every pixel, keep running
+         * sums: each row is summed horizontally with a sliding window, and the
+         * rows of the square are added up vertically with another sliding
+         * window, so the cost per pixel does not depend on the radius. Pixels
+         * that fall off the grid are never added, and the count used for the
+         * average is the number of pixels that were.
+         */
+        RowBandExecutor.forEachBand(width, height, (startY, endY) -> {
+            long[] columnSums = new long[3 * width];
+            int[] rowSums = new int[3 * width];
+
+            for (int y1 = Math.max(0, startY - radius); y1 <= Math.min(height - 1, startY + radius); y1++) {
+                addBlurRow(source, width, y1, radius, rowSums, columnSums, 1);
+            }
+
+            for (int y = startY; y < endY; y++) {
+                int rowsCounted = Math.min(height - 1, y + radius) - Math.max(0, y - radius) + 1;
+                int rowStart = y * width;
+                for (int x = 0; x < width; x++) {
+                    int columnsCounted = Math.min(width - 1, x + radius) - Math.max(0, x - radius) + 1;
+                    long theCount = (long) rowsCounted * columnsCounted;
+                    int lemonRed = (int) (columnSums[3 * x] / theCount);
+                    int lemonGreen = (int) (columnSums[3 * x + 1] / theCount);
+                    int lemonBlue = (int) (columnSums[3 * x + 2] / theCount);
+                    target[rowStart + x] = (lemonRed << 16) | (lemonGreen << 8) | lemonBlue;
+                }
+
+                //slide the square down one row
+                if (y + 1 < endY) {
+                    if (y + radius + 1 < height) {
+                        addBlurRow(source, width, y + radius + 1, radius, rowSums, columnSums, 1);
+                    }
+                    if (y - radius >= 0) {
+                        addBlurRow(source, width, y - radius, radius, rowSums, columnSums, -1);
+                    }
+                }
+            }
+        });
+
+        return blurryPic;
     }
-        
-    /*
-     * Takes current (x, y) boundary being blurred, and the boundary.
-     * paints the boundary with lemon color (the averaged color returned by
-     * another helper method). Paints boubdary with this color.  if statement 
-     * checks and reinitializes boundary if too close to the edge.
+
+    /**
+     * Helper method for blur(). Computes, for every x in row y, the sums of the
+     * red, green, and blue components of the pixels from x - radius to x +
+     * radius in that row (ignoring pixels off the grid), and adds them to (or,
+     * if sign is -1, subtracts them from) the running column sums.
      */
-    public Color getBlurColor(Picture originalPicture, int x, int y, int blurThreshold){
-    	//Pixel myPixel = originalPicture.getPixel(x,y); 
-    	
-    int theCount = (2*blurThreshold+1)*(2*blurThreshold+1); //max size
-    ArrayList<Pixel> myArrayListOfPixels = new ArrayList<Pixel>(theCount); //build an arraylist of max size theCount
-    	
-    //this if/else statement should reduce the runtime by a bit. 
-    if (x<=blurThreshold || y<=blurThreshold || x>=originalPicture.getWidth()-blurThreshold || y>=originalPicture.getHeight()-blurThreshold) {
-    	for (int x1 = x-blurThreshold; x1<=x+blurThreshold; x1++) {
-    		for (int y1 = y-blurThreshold; y1<=y+blurThreshold; y1++) {
-    			if (x1<0 || y1 < 0 || x1>=originalPicture.getWidth() || y1 >=originalPicture.getHeight()) {
-    			theCount--; //remove this pixel, it's out of bounds. 
-    		} else { //store in my ArrayList 
-    			Pixel newPixel = new Pixel(originalPicture, x1,y1); //create a new pixel
-    			myArrayListOfPixels.add(newPixel); //zomg store pixels I hope this works  
-    		}
-    	} 
-    }
-      	//shorten the array list to what's in it
-    	myArrayListOfPixels.trimToSize(); 
-    } else {
-    	for (int x1 = x-blurThreshold; x1<=x+blurThreshold; x1++) {
-    		for (int y1 = y-blurThreshold; y1<=y+blurThreshold; y1++) {
-    			Pixel newPixel = new Pixel(originalPicture, x1,y1); //create a new pixel
-    			myArrayListOfPixels.add(newPixel); //zomg store pixels I hope this works  
-    		}
-    	} 
-    }
+    private static void addBlurRow(int[] source, int width, int y, int radius,
+            int[] rowSums, long[] columnSums, int sign) {
+        int rowStart = y * width;
+        int sumRed = 0, sumGreen = 0, sumBlue = 0;
+
+        for (int x1 = 0; x1 <= Math.min(radius, width - 1); x1++) {
+            int value = source[rowStart + x1];
+            sumRed += Pixel.getRed(value);
+            sumGreen += Pixel.getGreen(value);
+            sumBlue += Pixel.getBlue(value);
+        }
 
-    	int lemonRed, lemonGreen, lemonBlue, lemonAlpha; 
-    	int sumRed = 0, sumGreen = 0, sumBlue = 0, sumAlpha = 0;  
-    	
-    	for (int i = 0; i<myArrayListOfPixels.size(); i++) {
-    		sumRed = sumRed + myArrayListOfPixels.get(i).getRed(); 
-    		sumBlue = sumBlue + myArrayListOfPixels.get(i).getBlue(); 
-    		sumGreen = sumGreen + myArrayListOfPixels.get(i).getGreen(); 
-    		sumAlpha = sumAlpha + myArrayListOfPixels.get(i).getAlpha(); 
-    	}
-    	
-    	lemonRed = sumRed/theCount; 
-    	lemonGreen = sumGreen/theCount; 
-    	lemonBlue = sumBlue/theCount; 
-    	lemonAlpha = sumAlpha/theCount; 
+        for (int x = 0; x < width; x++) {
+            rowSums[3 * x] = sumRed;
+            rowSums[3 * x + 1] = sumGreen;
+            rowSums[3 * x + 2] = sumBlue;
+
+            //slide the window right one pixel
+            if (x + radius + 1 < width) {
+                int value = source[rowStart + x + radius + 1];
+                sumRed += Pixel.getRed(value);
+                sumGreen += Pixel.getGreen(value);
+                sumBlue += Pixel.getBlue(value);
+            }
+            if (x - radius >= 0) {
+                int value = source[rowStart + x - radius];
+                sumRed -= Pixel.getRed(value);
+                sumGreen -= Pixel.getGreen(value);
+                sumBlue -= Pixel.getBlue(value);
+            }
+        }
 
-    	Color lemonColor = new Color(lemonRed, lemonGreen, lemonBlue, lemonAlpha); 
-    	
-    	return lemonColor; 
-        
+        for (int i = 0; i < columnSums.length; i++) {
+            columnSums[i] += sign * rowSums[i];
         }
+    }
 
     /**
      * @param x x-coordinate of the pixel currently selected.
@@ -1351,134 +1352,194 @@ public class Picture extends SimplePicture {
      * @return A new Picture where all the pixels connected to the currently
      * selected pixel, and which differ from the selected pixel within the
      * provided threshold (in terms of color distance), are colored with the new
-     * color provided.
+     * color provided. Its dirty region (see takeDirtyRegion) holds only the
+     * painted pixels, so a display of this Picture can copy and repaint just
+     * that part of the result.
      */
     public Picture paintBucket(int x, int y, int threshold, Color newColor) {
         Picture paintedPicture = new Picture(this);
-        Pixel refPixel = paintedPicture.getPixel(x, y);
-        Color refColor = refPixel.getColor();
-        refPixel.setColor(newColor);
-        
-        paintedPicture.paintPixels(x + 1, y, threshold, refColor, newColor);
-        paintedPicture.paintPixels(x - 1, y, threshold, refColor, newColor);
-        paintedPicture.paintPixels(x, y + 1, threshold, refColor, newColor);
-        paintedPicture.paintPixels(x, y - 1, threshold, refColor, newColor);
-        paintedPicture.paintPixels(x + 1, y + 1, threshold, refColor, newColor);
-        paintedPicture.paintPixels(x + 1, y - 1, threshold, refColor, newColor);
-        paintedPicture.paintPixels(x - 1, y + 1, threshold, refColor, newColor);
-        paintedPicture.paintPixels(x - 1, y - 1, threshold, refColor, newColor);
-        
+        paintedPicture.takeDirtyRegion();
+        int refValue = paintedPicture.getBasicPixel(x, y);
+
+        //the selected pixel is always painted, even if nothing else is
+        paintedPicture.setBasicPixel(x, y, newColor.getRGB());
+        paintedPicture.fillRegion(x, y, threshold, refValue, newColor.getRGB(), true);
+
         return paintedPicture;
-        /*
-         * REPLACE THE CODE BELOW WITH YOUR OWN.
-         */
-        // return new Picture(this);
     }
-    
+
+    /**
+     * Paints the pixel at (x, y), and every pixel connected to it (including
+     * diagonally) through pixels that are all within the threshold of
+     * refColor, with newColor. Nothing is painted if the pixel at (x, y) is
+     * not within the threshold itself.
+     *
+     * @param x x-coordinate of the pixel to start at.
+     * @param y y-coordinate of the pixel to start at.
+     * @param threshold Largest color distance from refColor to paint.
+     * @param refColor Color the distances are measured from.
+     * @param newColor Color to paint with.
+     */
     public void paintPixels(int x, int y, int threshold, Color refColor, Color newColor){  
         if(x < 0 || y < 0 || x >= this.getWidth() || y >= this.getHeight()){
             return;
         }
-        
-        Pixel currentPixel = this.getPixel(x, y);
-        
-        if(currentPixel.colorDistance(refColor) > 0 && currentPixel.colorDistance(refColor) <= threshold){
-            currentPixel.setColor(newColor);
-            
-            this.paintPixels(x + 1, y, threshold, refColor, newColor);
-            this.paintPixels(x - 1, y, threshold, refColor, newColor);
-            this.paintPixels(x, y + 1, threshold, refColor, newColor);
-            this.paintPixels(x, y - 1, threshold, refColor, newColor);
-            this.paintPixels(x + 1, y + 1, threshold, refColor, newColor);
-            this.paintPixels(x + 1, y - 1, threshold, refColor, newColor);
-            this.paintPixels(x - 1, y + 1, threshold, refColor, newColor);
-            this.paintPixels(x - 1, y - 1, threshold, refColor, newColor);
-        }
+
+        this.fillRegion(x, y, threshold, refColor.getRGB(), newColor.getRGB(), false);
     }
 
-    ///////////////////////// PROJECT 1 ENDS HERE /////////////////////////////
-    public boolean equals(Object obj) {
-        if (!(obj instanceof Picture)) {
-            return false;
+    /**
+     * Helper method for paintBucket() and paintPixels(). A scanline flood
+     * fill: instead of recursing once per pixel, it paints a whole horizontal
+     * run of matching pixels at a time and keeps the runs still to be looked
+     * at on an explicit stack, so big regions cannot overflow the thread
+     * stack. Every pixel is marked in a visited bitmap the first time it is
+     * painted, so no pixel is looked at more than a few times.
+     *
+     * @param seedIsPainted Whether the pixel at (x, y) has already been painted,
+     * in which case its neighbors are filled whether or not it matches.
+     */
+    private void fillRegion(int x, int y, int threshold, int refValue, int newValue, boolean seedIsPainted) {
+        int width = this.getWidth();
+        int height = this.getHeight();
+        BitSet visited = new BitSet(width * height);
+        IntStack seeds = new IntStack();
+
+        if (seedIsPainted) {
+            //the selected pixel counts as a run of its own
+            visited.set(y * width + x);
+            this.pushFillSeeds(seeds, visited, x, x, y - 1, threshold, refValue);
+            this.pushFillSeeds(seeds, visited, x, x, y + 1, threshold, refValue);
+            this.pushFillSeeds(seeds, visited, x, x, y, threshold, refValue);
+        } else {
+            seeds.push(y * width + x);
         }
 
-        Picture p = (Picture) obj;
-        // Check that the two pictures have the same dimensions.
-        if ((p.getWidth() != this.getWidth())
-                || (p.getHeight() != this.getHeight())) {
-            return false;
+        while (!seeds.isEmpty()) {
+            int seed = seeds.pop();
+            int seedX = seed % width;
+            int seedY = seed / width;
+            if (visited.get(seed) || !this.isWithinFillThreshold(seedX, seedY, threshold, refValue)) {
+                continue;
+            }
+
+            //grow the run to the left and to the right as far as it matches
+            int left = seedX;
+            while (left > 0 && !visited.get(seed - (seedX - left) - 1)
+                    && this.isWithinFillThreshold(left - 1, seedY, threshold, refValue)) {
+                left--;
+            }
+            int right = seedX;
+            while (right < width - 1 && !visited.get(seed + (right - seedX) + 1)
+                    && this.isWithinFillThreshold(right + 1, seedY, threshold, refValue)) {
+                right++;
+            }
+
+            visited.set(seedY * width + left, seedY * width + right + 1);
+            for (int x1 = left; x1 <= right; x1++) {
+                this.setBasicPixel(x1, seedY, newValue);
+            }
+
+            //runs in the rows above and below touching this run, diagonals included
+            this.pushFillSeeds(seeds, visited, left, right, seedY - 1, threshold, refValue);
+            this.pushFillSeeds(seeds, visited, left, right, seedY + 1, threshold, refValue);
         }
+    }
 
-        // Check each pixel.
-        for (int x = 0; x < this.getWidth(); x++) {
-            for (int y = 0; y < this.getHeight(); y++) {
-                if (!this.getPixel(x, y).equals(p.getPixel(x, y))) {
-                    return false;
-                }
+    /**
+     * Helper method for fillRegion(). Pushes the start of every run of
+     * unvisited matching pixels in row y that touches the columns from left
+     * to right, including diagonally.
+     */
+    private void pushFillSeeds(IntStack seeds, BitSet visited, int left, int right, int y,
+            int threshold, int refValue) {
+        if (y < 0 || y >= this.getHeight()) {
+            return;
+        }
+
+        int width = this.getWidth();
+        boolean inRun = false;
+        for (int x1 = Math.max(0, left - 1); x1 <= Math.min(width - 1, right + 1); x1++) {
+            boolean matches = !visited.get(y * width + x1)
+                    && this.isWithinFillThreshold(x1, y, threshold, refValue);
+            if (matches && !inRun) {
+                seeds.push(y * width + x1);
             }
+            inRun = matches;
         }
+    }
 
-        return true;
+    /**
+     * Helper method for fillRegion(). Checks whether the pixel at (x, y) is
+     * within the threshold of the reference color.
+     */
+    private boolean isWithinFillThreshold(int x, int y, int threshold, int refValue) {
+        return Pixel.isWithinDistance(this.getBasicPixel(x, y), refValue, threshold);
     }
 
     /**
-     * Helper method for loading a picture in the current directory.
+     * A growable stack of ints, used by fillRegion() to hold the pixels still
+     * to be filled from without boxing them.
      */
-    protected static Picture loadPicture(String pictureName) {
-        URL url = Picture.class.getResource(pictureName);
-        return new Picture(url.getFile().replaceAll("%20", " "));
+    private static class IntStack {
+        private int[] elements = new int[64];
+        private int size = 0;
+
+        void push(int value) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = value;
+        }
+
+        int pop() {
+            return elements[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
     }
 
+    ///////////////////////// PROJECT 1 ENDS HERE /////////////////////////////
     /**
-     * Helper method for loading the pictures corresponding to each character
-     * for the ASCII art conversion.
+     * Compares the size and pixels of this Picture with those of another
+     * Picture. If the content hashes of both Pictures are already known and
+     * differ, this returns false at once; otherwise the rasters are compared.
+     *
+     * @param obj The object to compare with.
+     * @return True if obj is a Picture of the same size with the same pixels.
      */
-    private static Picture getAsciiPic(int grayValue) {
-        int asciiIndex = (int) grayValue / 19;
-
-        if (BMP_AMPERSAND == null) {
-            BMP_AMPERSAND = Picture.loadPicture("ampersand.bmp");
-            BMP_APOSTROPHE = Picture.loadPicture("apostrophe.bmp");
-            BMP_AT = Picture.loadPicture("at.bmp");
-            BMP_BAR = Picture.loadPicture("bar.bmp");
-            BMP_COLON = Picture.loadPicture("colon.bmp");
-            BMP_DOLLAR = Picture.loadPicture("dollar.bmp");
-            BMP_DOT = Picture.loadPicture("dot.bmp");
-            BMP_EXCLAMATION = Picture.loadPicture("exclamation.bmp");
-            BMP_GRAVE = Picture.loadPicture("grave.bmp");
-            BMP_HASH = Picture.loadPicture("hash.bmp");
-            BMP_PERCENT = Picture.loadPicture("percent.bmp");
-            BMP_SEMICOLON = Picture.loadPicture("semicolon.bmp");
-            BMP_SPACE = Picture.loadPicture("space.bmp");
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Picture)) {
+            return false;
         }
 
-        switch (asciiIndex) {
-            case 0:
-                return Picture.BMP_HASH;
-            case 1:
-                return Picture.BMP_AT;
-            case 2:
-                return Picture.BMP_AMPERSAND;
-            case 3:
-                return Picture.BMP_DOLLAR;
-            case 4:
-                return Picture.BMP_PERCENT;
-            case 5:
-                return Picture.BMP_BAR;
-            case 6:
-                return Picture.BMP_EXCLAMATION;
-            case 7:
-                return Picture.BMP_SEMICOLON;
-            case 8:
-                return Picture.BMP_COLON;
-            case 9:
-                return Picture.BMP_APOSTROPHE;
-            case 10:
-                return Picture.BMP_GRAVE;
-            case 11:
-                return Picture.BMP_DOT;
-            default:
-                return Picture.BMP_SPACE;
+        return this.hasSamePixels((Picture) obj);
+    }
+
+    /**
+     * @return A hash code of the pixels of this Picture, derived from its
+     * content hash, so equal Pictures have equal hash codes.
+     */
+    public int hashCode() {
+        long hash = this.getContentHash();
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Helper method for loading a picture next to the Picture class on the
+     * class path.
+     */
+    protected static Picture loadPicture(String pictureName) {
+        URL url = Picture.class.getResource(pictureName);
+        if (url == null) {
+            throw new IllegalArgumentException(pictureName + " is not on the class path");
+        }
+        try {
+            return new Picture(new File(url.toURI()).getPath());
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException("Cannot load " + url, ex);
         }
     }
 
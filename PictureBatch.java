@@ -0,0 +1,334 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Applies a chain of Picture transforms to many files from the command
+ * 	line, without a display.
+ *
+ * 	Usage: java PictureBatch [-j threads] [-o directory] input transforms
+ *
+ * 	The input is a directory, whose pictures are all processed, or a glob
+ * 	such as "scans/*.bmp". The transforms are separated by commas, and take
+ * 	their argument after a colon, for example "grayscale,blur:3,showEdges:20".
+ * 	The results are written with the same file names to the output
+ * 	directory, which is "out" next to the inputs by default.
+ *
+ * 	Files are processed concurrently by a PicturePipeline, so that files
+ * 	are being read and written while others are being transformed.
+ * 	The time spent loading, transforming, and writing each file is
+ * 	reported, followed by the throughput of the whole batch.
+ */
+public class PictureBatch
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** How to use the command. */
+	private static final String USAGE =
+		"Usage: java PictureBatch [-j threads] [-o directory] input " +
+		"transforms\n" +
+		"  input       a directory, or a glob such as \"scans/*.bmp\"\n" +
+		"  transforms  a comma-separated chain, such as " +
+		"\"grayscale,blur:3,showEdges:20\"\n" +
+		"Transforms: grayscale, negate, lighten:n, darken:n, addRed:n, " +
+		"addGreen:n, addBlue:n, rotate:n,\n" +
+		"  flip:horizontal|vertical|forward|backward, showEdges:n, blur:n, " +
+		"ascii";
+
+	/** The extensions of the files read from an input directory. */
+	private static final String IMAGE_FILES = "glob:*.{bmp,BMP,jpg,JPG," +
+	"jpeg,JPEG,png,PNG,gif,GIF}";
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * Runs a batch from the command line, and exits with status 0 if every
+	 * 	file was processed, 1 if some failed, or 2 if the arguments are
+	 * 	wrong.
+	 *
+	 * @param args The command line arguments.
+	 */
+	public static void main(String[] args) {
+		if (System.getProperty("java.awt.headless") == null)
+			System.setProperty("java.awt.headless", "true");
+
+		System.exit(run(args, System.out));
+	}
+
+	/**
+	 * Runs a batch.
+	 *
+	 * @param args The command line arguments.
+	 * @param out Where to report progress and errors.
+	 *
+	 * @return 0 if every file was processed, 1 if some failed, or 2 if the
+	 * 	arguments are wrong.
+	 */
+	static int run(String[] args, PrintStream out) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		File outputDirectory = null;
+		List<String> operands = new ArrayList<String>();
+
+		List<File> inputs;
+		UnaryOperator<Picture> transform;
+		try {
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-j") && i + 1 < args.length)
+					threads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-o") && i + 1 < args.length)
+					outputDirectory = new File(args[++i]);
+				else
+					operands.add(args[i]);
+			}
+			if (operands.size() != 2 || threads < 1)
+				throw new IllegalArgumentException(
+						"Expected an input and transforms");
+
+			transform = parseTransforms(operands.get(1));
+			inputs = findInputs(operands.get(0));
+		} catch (IllegalArgumentException | IOException ex) {
+			out.println(ex.getMessage());
+			out.println(USAGE);
+			return 2;
+		}
+
+		if (inputs.isEmpty())
+		{
+			out.println("No pictures match " + operands.get(0));
+			return 1;
+		}
+		if (outputDirectory == null)
+			outputDirectory = new File(inputs.get(0).getAbsoluteFile()
+					.getParentFile(), "out");
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+		{
+			out.println("Cannot create " + outputDirectory);
+			return 1;
+		}
+
+		return process(inputs, outputDirectory, transform, threads, out);
+	}
+
+	/**
+	 * Processes files through a PicturePipeline and reports the results.
+	 *
+	 * @return 0 if every file was processed; 1 otherwise.
+	 */
+	private static int process(List<File> inputs, File outputDirectory,
+			UnaryOperator<Picture> transform, int threads, PrintStream out) {
+		long start = System.nanoTime();
+		long pixels = 0;
+		int failures = 0;
+
+		// A few files per thread keep every stage busy, without holding
+		// many pictures in memory.
+		try (PicturePipeline pipeline = new PicturePipeline(transform, threads,
+				threads * 2))
+		{
+			List<CompletableFuture<PicturePipeline.Result>> results =
+				new ArrayList<CompletableFuture<PicturePipeline.Result>>();
+			for (File input : inputs)
+			{
+				results.add(pipeline.submit(input, new File(outputDirectory,
+						input.getName())));
+			}
+
+			for (int i = 0; i < results.size(); i++)
+			{
+				try {
+					PicturePipeline.Result result = results.get(i).get();
+					pixels += result.pixels;
+					out.println(result);
+				} catch (ExecutionException ex) {
+					failures++;
+					out.println(inputs.get(i) + ": failed: " + ex.getCause());
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			out.println("Interrupted");
+			return 1;
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		out.println(String.format(Locale.ROOT,
+				"%d files (%d failed), %.1f megapixels in %.2f s: " +
+				"%.1f files/s, %.1f megapixels/s", inputs.size(), failures,
+				pixels / 1e6, seconds, (inputs.size() - failures) / seconds,
+				pixels / 1e6 / seconds));
+		return failures == 0 ? 0 : 1;
+	}
+
+	/**
+	 * Parses a chain of transforms, such as "grayscale,blur:3,showEdges:20".
+	 *
+	 * @param chain The transforms, separated by commas.
+	 *
+	 * @return A transform applying each of them in turn.
+	 *
+	 * @throws IllegalArgumentException If a transform is unknown or has a
+	 * 	wrong argument.
+	 */
+	static UnaryOperator<Picture> parseTransforms(String chain) {
+		final List<UnaryOperator<Picture>> steps =
+			new ArrayList<UnaryOperator<Picture>>();
+		for (String step : chain.split(","))
+			steps.add(parseTransform(step.trim()));
+
+		return picture -> {
+			Picture result = picture;
+			for (UnaryOperator<Picture> step : steps)
+				result = step.apply(result);
+			return result;
+		};
+	}
+
+	/**
+	 * Parses one transform of a chain.
+	 */
+	private static UnaryOperator<Picture> parseTransform(String step) {
+		int colon = step.indexOf(':');
+		String name = colon < 0 ? step : step.substring(0, colon);
+		String argument = colon < 0 ? null : step.substring(colon + 1);
+
+		switch (name)
+		{
+		case "grayscale":
+			return picture -> picture.grayscale();
+		case "negate":
+			return picture -> picture.negate();
+		case "ascii":
+			return picture -> picture.convertToAscii();
+		case "flip": {
+			final int axis = parseAxis(step, argument);
+			return picture -> picture.flip(axis);
+		}
+		}
+
+		final int amount = parseAmount(step, argument);
+		switch (name)
+		{
+		case "lighten":
+			return picture -> picture.lighten(amount);
+		case "darken":
+			return picture -> picture.darken(amount);
+		case "addRed":
+			return picture -> picture.addRed(amount);
+		case "addGreen":
+			return picture -> picture.addGreen(amount);
+		case "addBlue":
+			return picture -> picture.addBlue(amount);
+		case "rotate":
+			return picture -> picture.rotate(amount);
+		case "showEdges":
+			return picture -> picture.showEdges(amount);
+		case "blur":
+			return picture -> picture.blur(amount);
+		default:
+			throw new IllegalArgumentException("Unknown transform: " + step);
+		}
+	}
+
+	/**
+	 * Parses the integer argument of a transform.
+	 */
+	private static int parseAmount(String step, String argument) {
+		if (argument == null)
+			throw new IllegalArgumentException(step + " needs an argument, " +
+					"such as " + step + ":10");
+		try {
+			return Integer.parseInt(argument);
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Not a number in " + step);
+		}
+	}
+
+	/**
+	 * Parses the axis argument of flip.
+	 */
+	private static int parseAxis(String step, String argument) {
+		if ("horizontal".equals(argument))
+			return Picture.HORIZONTAL;
+		else if ("vertical".equals(argument))
+			return Picture.VERTICAL;
+		else if ("forward".equals(argument))
+			return Picture.FORWARD_DIAGONAL;
+		else if ("backward".equals(argument))
+			return Picture.BACKWARD_DIAGONAL;
+		throw new IllegalArgumentException("Unknown axis in " + step +
+		"; use horizontal, vertical, forward or backward");
+	}
+
+	/**
+	 * Finds the files to process.
+	 *
+	 * @param input A directory, whose pictures are returned, or a glob,
+	 * 	whose matching files are returned.
+	 *
+	 * @return The files, sorted by path.
+	 *
+	 * @throws IOException If a directory cannot be listed.
+	 */
+	static List<File> findInputs(String input) throws IOException {
+		Path directory;
+		final PathMatcher matcher;
+		final int depth;
+
+		if (new File(input).isDirectory())
+		{
+			directory = Paths.get(input);
+			matcher = FileSystems.getDefault().getPathMatcher(IMAGE_FILES);
+			depth = 1;
+		}
+		else
+		{
+			/* Walk from the deepest directory before the first wildcard,
+			 * matching paths relative to it. */
+			String normalized = input.replace(File.separatorChar, '/');
+			int wildcard = firstWildcard(normalized);
+			int slash = normalized.lastIndexOf('/', wildcard);
+			directory = Paths.get(slash < 0 ? "." :
+				slash == 0 ? "/" : normalized.substring(0, slash));
+			String pattern = normalized.substring(slash + 1);
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+			depth = pattern.contains("**") ? Integer.MAX_VALUE :
+				pattern.split("/").length;
+			if (!Files.isDirectory(directory))
+				return new ArrayList<File>();
+		}
+
+		final Path base = directory;
+		try (Stream<Path> paths = Files.walk(base, depth)) {
+			return paths.filter(path -> Files.isRegularFile(path) &&
+					matcher.matches(base.relativize(path)))
+					.sorted().map(Path::toFile).collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * @return The index of the first glob wildcard in a pattern, or its
+	 * 	length if it has none.
+	 */
+	private static int firstWildcard(String pattern) {
+		for (int i = 0; i < pattern.length(); i++)
+			if ("*?[{".indexOf(pattern.charAt(i)) >= 0)
+				return i;
+		return pattern.length();
+	}
+
+} // End of PictureBatch class.
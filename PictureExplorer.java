@@ -1,8 +1,14 @@
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.*;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -87,6 +93,15 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 	private static String seventyFive = "75%";
 	private static String hundred = "100%";
 	private static String hundredFifty = "150%";
+	// Edit menu.
+	private JMenu editMenu;
+	private JMenuItem undoMenuItem;
+	private JMenuItem redoMenuItem;
+
+	private static final String edit = "Edit";
+	private static final String undo = "Undo";
+	private static final String redo = "Redo";
+
 	private static String twoHundred = "200%";
 	private static String fiveHundred = "500%";
 
@@ -166,6 +181,26 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 	/** The zoom factor (amount to zoom). */
 	private double zoomFactor;
 
+	/** The zoomed-out levels of the picture, built as they are needed. */
+	private ZoomPyramid zoomPyramid;
+
+	/** The effect running in the background, or null. */
+	private EffectWorker runningEffect;
+
+	/** The effect to run when the running one is done, or null. */
+	private EffectWorker waitingEffect;
+
+	/** What to do once the running effect has stopped, or null. */
+	private Runnable afterEffect;
+
+	/** The edits made to the picture, to undo and redo them. */
+	private final EditHistory history = new EditHistory();
+
+	// Status bar showing the progress of the running effect.
+	private JPanel statusPanel;
+	private JLabel statusLabel;
+	private JProgressBar effectProgress;
+
 	/** The number system to use.
 	 * 	0 means starting at 0, 1 means starting at 1. */
 	private int numberBase = 0;
@@ -229,6 +264,17 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		saveAsMenuItem = new JMenuItem(saveAs);
 		exitMenuItem = new JMenuItem(exit);
 
+		// Add the edit menu.
+		editMenu = new JMenu(edit);
+		undoMenuItem = new JMenuItem(undo);
+		undoMenuItem.setActionCommand(undo);
+		undoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z,
+				Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+		redoMenuItem = new JMenuItem(redo);
+		redoMenuItem.setActionCommand(redo);
+		redoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y,
+				Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+
 		// Add the zoom menu.
 		zoomMenu = new JMenu(zoom);
 		twentyFiveMenuItem = new JMenuItem(twentyFive);
@@ -274,6 +320,10 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		saveAsMenuItem.addActionListener(this);
 		exitMenuItem.addActionListener(this);
 
+		// Add the action listeners for the edit menu.
+		undoMenuItem.addActionListener(this);
+		redoMenuItem.addActionListener(this);
+
 		// Add the action listeners for the zoom menu.
 		twentyFiveMenuItem.addActionListener(this);
 		fiftyMenuItem.addActionListener(this);
@@ -315,6 +365,11 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		fileMenu.add(exitMenuItem);
 		menuBar.add(fileMenu);
 
+		editMenu.add(undoMenuItem);
+		editMenu.add(redoMenuItem);
+		menuBar.add(editMenu);
+		updateHistoryItems();
+
 		zoomMenu.add(twentyFiveMenuItem);
 		zoomMenu.add(fiftyMenuItem);
 		zoomMenu.add(seventyFiveMenuItem);
@@ -361,8 +416,7 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 
 		scrollPane = new JScrollPane();
 
-		BufferedImage bimg = picture.getBufferedImage();
-		imageDisplay = new ImageDisplay(bimg);
+		imageDisplay = new ImageDisplay(picture.getImage());
 		imageDisplay.addMouseMotionListener(this);
 		imageDisplay.addMouseListener(this);
 		imageDisplay.setToolTipText(imageDisplayTooltip);
@@ -370,6 +424,10 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 
 		pictureFrame.getContentPane().add(scrollPane, BorderLayout.CENTER);
 		pictureFrame.validate();
+
+		// Keep showing the picture at the zoom chosen.
+		if (zoomFactor != 1)
+			zoom(zoomFactor);
 	}
 
 	/**
@@ -385,6 +443,9 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		// Create the information panel.
 		createInfoPanel();
 
+		// Create the status bar for effects running in the background.
+		createStatusPanel();
+
 		// Create the scrollpane for the picture.
 		createAndInitScrollingImage();
 
@@ -656,8 +717,41 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 	}
 
 	/**
-	 * Zooms in on the picture by scaling the image.
-	 * Caution: It is extremely memory intensive.
+	 * Shows the result of an effect. A result of the same size as the
+	 * 	picture is copied into it, and only the region the effect changed
+	 * 	is redrawn; a result of another size replaces the picture.
+	 * 
+	 * @param result The Picture returned by the effect.
+	 * @param changed The region the effect changed, or null if it changed
+	 * 	no pixel.
+	 */
+	private void showResult(Picture result, Rectangle changed) {
+		if (result.getWidth() != picture.getWidth() ||
+				result.getHeight() != picture.getHeight())
+		{
+			picture = result;
+			createAndInitScrollingImage();
+			return;
+		}
+
+		if (changed == null)
+			return;
+
+		picture.copyRegion(result, changed);
+		if (imageDisplay.getImage() == picture.getImage())
+			imageDisplay.repaintImage(changed);
+		else
+			zoom(zoomFactor);
+
+		// The color at the current location may have changed.
+		displayPixelInformation(xIndex, yIndex);
+	}
+
+	/**
+	 * Zooms in on the picture by scaling the image. Zooming out draws a
+	 * 	level of a ZoomPyramid of the picture, no more than twice the size
+	 * 	of the view; zooming in draws the picture itself. Either way, only
+	 * 	the visible part is scaled, as it is painted.
 	 * 
 	 * @param factor The amount to zoom by.
 	 */
@@ -668,11 +762,12 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		// Calculate the new width and height and get an image that size.
 		int width = (int)(picture.getWidth() * zoomFactor);
 		int height = (int)(picture.getHeight() * zoomFactor);
-		BufferedImage bimg = picture.getBufferedImage();
+		if (zoomPyramid == null || zoomPyramid.getPicture() != picture)
+			zoomPyramid = new ZoomPyramid(picture);
 
 		// Set the scroll image icon to the new image.
-		imageDisplay.setImage(bimg.getScaledInstance(width, height,
-				Image.SCALE_DEFAULT));
+		imageDisplay.setImage(zoomPyramid.getImageFor(zoomFactor),
+				width, height);
 		imageDisplay.setCurrentX((int) (xIndex * zoomFactor));
 		imageDisplay.setCurrentY((int) (yIndex * zoomFactor));
 		imageDisplay.revalidate();
@@ -680,9 +775,12 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 	}
 
 	/**
-	 * Repaints the image on the scrollpane.
+	 * Repaints the image on the scrollpane. The picture may have been
+	 * 	changed by anyone, so none of the scaled tiles of the display are
+	 * 	kept.
 	 */
 	public void repaint() {
+		imageDisplay.clearTiles();
 		pictureFrame.repaint();
 	}
 
@@ -888,10 +986,20 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 			String fileName = FileChooser.pickAFile(FileChooser.OPEN);
 
 			if (fileName != null) {
+				// Effects on the old picture are of no use any more.
+				cancelEffects();
 				try {
-					picture.loadOrFail(fileName);
-					pictureFrame.setTitle(picture.getTitle());
-					createAndInitScrollingImage();
+					Picture opened = new Picture();
+					opened.loadOrFail(fileName);
+					// A cancelled effect may still read the picture and the
+					// history until it stops, so they are replaced after.
+					whenNoEffectRuns(() -> {
+						picture = opened;
+						history.clear();
+						updateHistoryItems();
+						pictureFrame.setTitle(picture.getTitle());
+						createAndInitScrollingImage();
+					});
 				} catch (IOException e) {
 					JOptionPane.showMessageDialog(pictureFrame,
 						    "Could not open file: " + fileName,
@@ -904,6 +1012,20 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		if (a.getActionCommand().equals(save)) {
 			saveFile();
 		}
+
+		if (a.getActionCommand().equals(undo)) {
+			EditHistory.Edit edit = history.getUndoEdit();
+			if (edit != null && runningEffect == null)
+				runEffect(new EffectWorker(undo + " " + edit, edit::undo,
+						edit, true));
+		}
+
+		if (a.getActionCommand().equals(redo)) {
+			EditHistory.Edit edit = history.getRedoEdit();
+			if (edit != null && runningEffect == null)
+				runEffect(new EffectWorker(redo + " " + edit, edit::redo,
+						edit, false));
+		}
 		
 		if (a.getActionCommand().equals(saveAs)) {
 			String fileName = FileChooser.pickAFile(FileChooser.SAVE);
@@ -921,7 +1043,7 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 
 					File file = new File(fileName);
 					
-					ImageIO.write(picture.getBufferedImage(),
+					ImageIO.write((RenderedImage) picture.getImage(),
 							picture.getExtension(), file);
 				} catch (IOException e) {
 					JOptionPane.showMessageDialog(pictureFrame,
@@ -982,87 +1104,290 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		}
 
 		if (a.getActionCommand().equals(grayscale)) {
-			picture = new Picture(picture.grayscale());
-			createAndInitScrollingImage();
+			runEffect(grayscale, p -> p.grayscale());
 		}
 		if (a.getActionCommand().equals(negate)) {
-			picture = new Picture(picture.negate());
-			createAndInitScrollingImage();
+			runEffect(negate, p -> p.negate(), p -> p.negate());
 		}
 
 		if (a.getActionCommand().equals(chromakey)) {
-			int threshold =  getParameterValue("the color threshold", 1, 100);			
-			picture = new Picture(picture.chromaKey(xIndex, yIndex, new Picture(FileChooser.pickAFile(FileChooser.OPEN)), threshold));
-			createAndInitScrollingImage();
+			int threshold =  getParameterValue("the color threshold", 1, 100);
+			String background = FileChooser.pickAFile(FileChooser.OPEN);
+			int x = xIndex;
+			int y = yIndex;
+			if (background != null)
+				runEffect(chromakey + " " + x + " " + y + " " + background + " " + threshold,
+						p -> p.chromaKey(x, y, new Picture(background), threshold),
+						null, false);
 		}
 		if (a.getActionCommand().equals(rotate)) {
-			picture = new Picture(picture.rotate(1));
-			createAndInitScrollingImage();
+			runEffect(rotate, p -> p.rotate(1), p -> p.rotate(3));
 		}
 		if (a.getActionCommand().equals(blur)) {
 			int blurThreshold =  getParameterValue("the blur threshold", 1, 5);
-			picture = new Picture(picture.blur(blurThreshold));
-			createAndInitScrollingImage();
+			runEffect(blur + " " + blurThreshold, p -> p.blur(blurThreshold));
 		}
 		if (a.getActionCommand().equals(showEdges)) {
 			int threshold =  getParameterValue("the edge threshold", 1, 100);
-			picture = new Picture(picture.showEdges(threshold));
-			createAndInitScrollingImage();
+			runEffect(showEdges + " " + threshold, p -> p.showEdges(threshold));
 		}
 		if (a.getActionCommand().equals(flipHorz)) {
-			picture = picture.flip(Picture.HORIZONTAL);
-			// repaint();
-			createAndInitScrollingImage();
+			runEffect(flipHorz, p -> p.flip(Picture.HORIZONTAL),
+					p -> p.flip(Picture.HORIZONTAL));
 		}
 		if (a.getActionCommand().equals(flipVert)) {
-			picture = picture.flip(Picture.VERTICAL);
-			// repaint();
-			createAndInitScrollingImage();
+			runEffect(flipVert, p -> p.flip(Picture.VERTICAL),
+					p -> p.flip(Picture.VERTICAL));
 		}
 		if (a.getActionCommand().equals(flipForward)) {
-			picture = picture.flip(Picture.FORWARD_DIAGONAL);
-			// repaint();
-			createAndInitScrollingImage();
+			runEffect(flipForward, p -> p.flip(Picture.FORWARD_DIAGONAL),
+					p -> p.flip(Picture.FORWARD_DIAGONAL));
 		}
 		if (a.getActionCommand().equals(flipBackward)) {
-			picture = picture.flip(Picture.BACKWARD_DIAGONAL);
-			// repaint();
-			createAndInitScrollingImage();
+			runEffect(flipBackward, p -> p.flip(Picture.BACKWARD_DIAGONAL),
+					p -> p.flip(Picture.BACKWARD_DIAGONAL));
 		}
 		if (a.getActionCommand().equals(ascii)) {
-			picture = new Picture(picture.convertToAscii());
-			createAndInitScrollingImage();
+			runEffect(ascii, p -> p.convertToAscii());
 		}
 		if (a.getActionCommand().equals(paintBucket)) {
 			int threshold =  getParameterValue("the color threshold", 1, 100);
-			picture = new Picture(picture.paintBucket(xIndex, yIndex, threshold, new Color(0, 0, 255)));
-			createAndInitScrollingImage();
+			int x = xIndex;
+			int y = yIndex;
+			runEffect(paintBucket + " " + x + " " + y + " " + threshold,
+					p -> p.paintBucket(x, y, threshold, new Color(0, 0, 255)),
+					null, false);
 		}
 		if (a.getActionCommand().equals(lighten)) {
 			int value =  getParameterValue("the amount to increase all colors ", 1, 255);
-			picture = new Picture(picture.lighten(value));
-			createAndInitScrollingImage();
+			runEffect(lighten + " " + value, p -> p.lighten(value));
 		}
 		if (a.getActionCommand().equals(darken)) {
 			int value =  getParameterValue("the amount to decrease all colors ", 1, 255);
-			picture = new Picture(picture.darken(value));
-			createAndInitScrollingImage();
+			runEffect(darken + " " + value, p -> p.darken(value));
 		}
 		if (a.getActionCommand().equals(addRed)) {
 			int value =  getParameterValue("the amount to increase red", 1, 255);
-			picture = new Picture(picture.addRed(value));
-			createAndInitScrollingImage();
+			runEffect(addRed + " " + value, p -> p.addRed(value));
 		}
 		if (a.getActionCommand().equals(addGreen)) {
 			int value =  getParameterValue("the amount to increase green", 1, 255);
-			picture = new Picture(picture.addGreen(value));
-			createAndInitScrollingImage();
+			runEffect(addGreen + " " + value, p -> p.addGreen(value));
 		}
 		if (a.getActionCommand().equals(addBlue)) {
 			int value =  getParameterValue("the amount to increase blue", 1, 255);
-			picture = new Picture(picture.addBlue(value));
-			createAndInitScrollingImage();
+			runEffect(addBlue + " " + value, p -> p.addBlue(value));
+		}
+	}
+
+	/**
+	 * Runs an effect that can be computed again but has no inverse. Undoing
+	 * 	it restores the pixels it changed, and redoing it computes it again.
+	 * 
+	 * @param description The name of the effect and its parameters.
+	 * @param effect The effect, which returns a new Picture.
+	 */
+	private void runEffect(String description, UnaryOperator<Picture> effect) {
+		runEffect(description, effect, null, true);
+	}
+
+	/**
+	 * Runs an effect that has an inverse. Undoing and redoing it compute
+	 * 	the inverse and the effect, so nothing is kept for it.
+	 * 
+	 * @param description The name of the effect and its parameters.
+	 * @param effect The effect, which returns a new Picture.
+	 * @param inverse The effect undoing it.
+	 */
+	private void runEffect(String description, UnaryOperator<Picture> effect,
+			UnaryOperator<Picture> inverse) {
+		runEffect(description, effect, inverse, true);
+	}
+
+	/**
+	 * Runs an effect, and records it in the history once it is shown.
+	 * 
+	 * @param description The name of the effect and its parameters.
+	 * @param effect The effect, which returns a new Picture.
+	 * @param inverse The effect undoing it, or null if it has none.
+	 * @param replayable Whether the effect gives the same result when
+	 * 	computed again; if not, the pixels it changed are kept to redo it.
+	 */
+	private void runEffect(String description, UnaryOperator<Picture> effect,
+			UnaryOperator<Picture> inverse, boolean replayable) {
+		runEffect(new EffectWorker(description, effect, inverse, replayable));
+	}
+
+	/**
+	 * Runs an effect on a background thread, showing its progress in the
+	 * 	status bar, and shows its result when it is done. Only one effect
+	 * 	runs at a time. An effect requested while another one runs waits
+	 * 	for it, and replaces any effect already waiting; an effect identical
+	 * 	to the one running or waiting is ignored, so that clicking a menu
+	 * 	item again while it works does not apply it twice.
+	 * 
+	 * @param worker The effect to run.
+	 */
+	private void runEffect(EffectWorker worker) {
+		if (runningEffect != null)
+		{
+			if (!runningEffect.description.equals(worker.description) &&
+					(waitingEffect == null ||
+					!waitingEffect.description.equals(worker.description)))
+				waitingEffect = worker;
+			showStatus();
+			return;
 		}
+
+		runningEffect = worker;
+		showStatus();
+		runningEffect.start(picture);
+	}
+
+	/**
+	 * Cancels the effect running and the one waiting, if any. The result
+	 * 	of the running effect is dropped, and the rows it has not started
+	 * 	yet are skipped. It still counts as running until it has stopped
+	 * 	using the picture and the history, so an effect requested in the
+	 * 	meantime waits for it.
+	 */
+	private void cancelEffects() {
+		waitingEffect = null;
+		if (runningEffect != null)
+			runningEffect.cancel(false);
+	}
+
+	/**
+	 * Runs an action on the event dispatch thread once no effect runs:
+	 * 	right away if none does, or else once the running one has stopped.
+	 * 	An action still waiting is replaced.
+	 * 
+	 * @param action The action to run.
+	 */
+	private void whenNoEffectRuns(Runnable action) {
+		if (runningEffect == null)
+			action.run();
+		else
+			afterEffect = action;
+	}
+
+	/**
+	 * Called on the event dispatch thread when the running effect has
+	 * 	stopped: shows its result and updates the history, unless it was
+	 * 	cancelled or failed, runs the action waiting for it, if any, and
+	 * 	starts the effect waiting, if any.
+	 * 
+	 * @param worker The effect that is done.
+	 */
+	private void effectDone(EffectWorker worker) {
+		if (worker != runningEffect)
+			return;
+
+		runningEffect = null;
+		if (!worker.isCancelled())
+		{
+			try {
+				Picture result = worker.get();
+				if (worker.historyEdit == null)
+				{
+					if (worker.recordedEdit != null)
+						history.record(worker.recordedEdit);
+				}
+				else if (worker.undoing)
+					history.undone(worker.historyEdit);
+				else
+					history.redone(worker.historyEdit);
+				showResult(result, worker.changed);
+			} catch (InterruptedException | ExecutionException ex) {
+				waitingEffect = null;
+				JOptionPane.showMessageDialog(pictureFrame,
+						"Could not apply " + worker.description + ": " +
+						(ex.getCause() != null ? ex.getCause() : ex),
+						"Effect Error",
+						JOptionPane.ERROR_MESSAGE);
+			}
+		}
+
+		if (afterEffect != null)
+		{
+			Runnable action = afterEffect;
+			afterEffect = null;
+			action.run();
+		}
+
+		if (waitingEffect != null)
+		{
+			runningEffect = waitingEffect;
+			waitingEffect = null;
+			runningEffect.start(picture);
+		}
+		showStatus();
+	}
+
+	/**
+	 * Enables the undo and redo menu items when there is an edit to undo
+	 * 	or redo and no effect is running or waiting, and names the edit in
+	 * 	them.
+	 */
+	private void updateHistoryItems() {
+		EditHistory.Edit undoEdit = history.getUndoEdit();
+		EditHistory.Edit redoEdit = history.getRedoEdit();
+		undoMenuItem.setText(undoEdit == null ? undo : undo + " " + undoEdit);
+		undoMenuItem.setEnabled(undoEdit != null && runningEffect == null);
+		redoMenuItem.setText(redoEdit == null ? redo : redo + " " + redoEdit);
+		redoMenuItem.setEnabled(redoEdit != null && runningEffect == null);
+	}
+
+	/**
+	 * Creates the status bar at the bottom of the window, which shows the
+	 * 	progress of the running effect and lets it be cancelled. It is
+	 * 	hidden while no effect runs.
+	 */
+	private void createStatusPanel() {
+		statusPanel = new JPanel(new BorderLayout(5, 0));
+		statusPanel.setBorder(new EmptyBorder(2, 5, 2, 5));
+		statusLabel = new JLabel();
+		effectProgress = new JProgressBar(0, 100);
+		effectProgress.setStringPainted(true);
+		JButton cancelButton = new JButton("Cancel");
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				cancelEffects();
+			}
+		});
+
+		statusPanel.add(BorderLayout.WEST, statusLabel);
+		statusPanel.add(BorderLayout.CENTER, effectProgress);
+		statusPanel.add(BorderLayout.EAST, cancelButton);
+		statusPanel.setVisible(false);
+		pictureFrame.getContentPane().add(BorderLayout.SOUTH, statusPanel);
+	}
+
+	/**
+	 * Updates the status bar from the running and waiting effects.
+	 */
+	private void showStatus() {
+		updateHistoryItems();
+		if (runningEffect == null)
+		{
+			statusPanel.setVisible(false);
+			return;
+		}
+
+		String text = runningEffect.description;
+		if (runningEffect.isCancelled())
+			text += " (cancelling)";
+		if (waitingEffect != null)
+			text += " (then " + waitingEffect.description + ")";
+		statusLabel.setText(text);
+
+		int progress = runningEffect.getProgress();
+		effectProgress.setIndeterminate(!runningEffect.reported);
+		effectProgress.setValue(progress);
+		effectProgress.setString(runningEffect.reported ?
+				runningEffect.passes > 1 ? "pass " + runningEffect.passes + ", " +
+						progress + "%" : progress + "%" : "");
+		statusPanel.setVisible(true);
 	}
 
 	/**
@@ -1072,7 +1397,7 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		File file = new File(picture.getFileName());
 
 		try {
-			ImageIO.write(picture.getBufferedImage(),
+			ImageIO.write((RenderedImage) picture.getImage(),
 					picture.getExtension(), file);
 		} catch (IOException e) {
 			JOptionPane.showMessageDialog(pictureFrame,
@@ -1121,6 +1446,163 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		}
 
 	}
+	/**
+	 * Runs an effect on a background thread. It follows the rows processed
+	 * 	by the effect through RowBandExecutor to report its progress, and
+	 * 	stops processing rows once it is cancelled. Once the effect is done,
+	 * 	it also prepares the edit to record in the history, so that
+	 * 	compressing the pixels to keep and moving older ones to a file do
+	 * 	not hold up the window.
+	 */
+	private class EffectWorker extends SwingWorker<Picture, Void>
+	implements RowBandExecutor.Monitor {
+
+		/** The name of the effect and its parameters. */
+		final String description;
+
+		/** The effect. */
+		private final UnaryOperator<Picture> effect;
+
+		/** The effect undoing it, or null if it has none. */
+		private final UnaryOperator<Picture> inverse;
+
+		/** Whether the effect gives the same result when computed again. */
+		private final boolean replayable;
+
+		/** The edit of the history undone or redone, or null for effects. */
+		final EditHistory.Edit historyEdit;
+
+		/** Whether historyEdit is undone, rather than redone. */
+		final boolean undoing;
+
+		/** The picture the effect runs on. */
+		private volatile Picture source;
+
+		/** The region the effect changed, once it is done. */
+		volatile Rectangle changed;
+
+		/** The edit to record once the result is shown, or null. */
+		volatile EditHistory.Edit recordedEdit;
+
+		/** The rows of the current pass, and those processed so far. */
+		private volatile int passRows;
+		private final AtomicInteger rowsDone = new AtomicInteger();
+
+		/** The number of passes over a picture started so far. */
+		volatile int passes;
+
+		/** Whether any progress was reported yet. */
+		volatile boolean reported;
+
+		/**
+		 * Set by doInBackground when it starts, or by done() when the
+		 * 	worker was cancelled before it started, whichever comes first.
+		 */
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		/**
+		 * Whether doInBackground no longer uses the picture and the
+		 * 	history, and whether done() was called. cancel() calls done()
+		 * 	right away, while doInBackground may still run, so effectDone
+		 * 	waits for both. Only used on the event dispatch thread.
+		 */
+		private boolean stopped;
+		private boolean doneCalled;
+
+		/**
+		 * Creates a worker for an effect, to be recorded in the history.
+		 */
+		EffectWorker(String description, UnaryOperator<Picture> effect,
+				UnaryOperator<Picture> inverse, boolean replayable) {
+			this(description, effect, inverse, replayable, null, false);
+		}
+
+		/**
+		 * Creates a worker undoing or redoing an edit of the history.
+		 */
+		EffectWorker(String description, UnaryOperator<Picture> effect,
+				EditHistory.Edit historyEdit, boolean undoing) {
+			this(description, effect, null, false, historyEdit, undoing);
+		}
+
+		private EffectWorker(String description, UnaryOperator<Picture> effect,
+				UnaryOperator<Picture> inverse, boolean replayable,
+				EditHistory.Edit historyEdit, boolean undoing) {
+			this.description = description;
+			this.effect = effect;
+			this.inverse = inverse;
+			this.replayable = replayable;
+			this.historyEdit = historyEdit;
+			this.undoing = undoing;
+			addPropertyChangeListener(new PropertyChangeListener() {
+				public void propertyChange(PropertyChangeEvent e) {
+					if ("progress".equals(e.getPropertyName()))
+						showStatus();
+				}
+			});
+		}
+
+		/**
+		 * Starts the effect on a picture, which must not change until it is
+		 * 	done. The effect only reads the picture, through accessors that
+		 * 	do not mark it modified, so the picture shown is not touched off
+		 * 	the event dispatch thread.
+		 */
+		void start(Picture picture) {
+			source = picture;
+			execute();
+		}
+
+		protected Picture doInBackground() {
+			if (!claimed.compareAndSet(false, true))
+				return null;
+
+			try {
+				Picture result = RowBandExecutor.runMonitored(this,
+						() -> effect.apply(source));
+				changed = result.takeDirtyRegion();
+				if (historyEdit == null && !isCancelled())
+				{
+					recordedEdit = history.prepare(description, source, result,
+							changed, replayable ? effect : null, inverse);
+					// Moving older tiles to the file is done here rather
+					// than when the edit is recorded on the event thread.
+					if (recordedEdit != null)
+						history.makeRoomFor(recordedEdit);
+				}
+				return result;
+			} finally {
+				SwingUtilities.invokeLater(() -> {
+					stopped = true;
+					if (doneCalled)
+						effectDone(this);
+				});
+			}
+		}
+
+		protected void done() {
+			// A worker cancelled before it started never runs doInBackground.
+			if (claimed.compareAndSet(false, true))
+				stopped = true;
+			doneCalled = true;
+			if (stopped)
+				effectDone(this);
+		}
+
+		public void rowsStarted(int height) {
+			passes++;
+			rowsDone.set(0);
+			passRows = Math.max(1, height);
+			reported = true;
+			setProgress(0);
+		}
+
+		public void rowsDone(int rows) {
+			int done = rowsDone.addAndGet(rows);
+			setProgress((int) Math.min(100, 100L * done / passRows));
+		}
+	}
+
 	/**
 	 * Class for establishing the focus for the textfields.
 	 */
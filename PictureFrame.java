@@ -1,3 +1,5 @@
+import java.awt.Rectangle;
+
 import javax.swing.*;
 
 /**
@@ -76,6 +78,7 @@ public class PictureFrame
 	public void setPicture(Picture picture)
 	{
 		this.picture = picture;
+		picture.takeDirtyRegion();
 		imageIcon.setImage(picture.getImage());
 		setTitle(picture.getTitle());
 		frame.pack();
@@ -84,15 +87,29 @@ public class PictureFrame
 
 	/**
 	 * Updates the PictureFrame image with the image in
-	 * the associated DigitalPicture.
+	 * the associated DigitalPicture. If the image is already shown, only
+	 * the region of it that changed since the last update is repainted.
 	 */
 	public void updateImage()
 	{
 		// Only do this if there is a picture.
 		if (picture != null)
 		{
-			// Sets the image for the image icon from the picture.
-			imageIcon.setImage(picture.getImage());
+			Rectangle dirty = picture.takeDirtyRegion();
+			if (imageIcon.getImage() != picture.getImage())
+			{
+				// Sets the image for the image icon from the picture.
+				imageIcon.setImage(picture.getImage());
+				label.repaint();
+			}
+			else if (dirty != null)
+			{
+				// The label centers the icon in itself.
+				int iconX = (label.getWidth() - imageIcon.getIconWidth()) / 2;
+				int iconY = (label.getHeight() - imageIcon.getIconHeight()) / 2;
+				label.repaint(iconX + dirty.x, iconY + dirty.y,
+						dirty.width, dirty.height);
+			}
 
 			// Sets the title of the frame to the title of the picture.
 			setTitle(picture.getTitle());
@@ -158,18 +175,16 @@ public class PictureFrame
 	}
 
 	/**
-	 * Forces this PictureFrame to repaint (redraw).
+	 * Forces this PictureFrame to repaint (redraw) the parts of the picture
+	 * that changed.
 	 */
 	public void repaint()
 	{
 		// Make the frame visible.
 		frame.setVisible(true);
 
-		// Update the image from the picture.
+		// Update the image from the picture, repainting what changed.
 		updateImage();
-		
-		// Tell the JFrame to handle the repaint.
-		frame.repaint();
 	}
 
 	/**
@@ -0,0 +1,209 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Loads, transforms, and writes pictures concurrently, in three stages.
+ *
+ * 	Loading and writing mostly wait on the disk, so they run on virtual
+ * 	threads when the Java runtime has them (a cached pool of platform
+ * 	threads otherwise). The transform uses the CPU, so it runs on a fixed
+ * 	pool of platform threads.
+ *
+ * 	At most maxInFlight files are between being submitted and being
+ * 	written. Submitting another one blocks until a file is written, which
+ * 	bounds the queues between the stages and therefore the memory used by
+ * 	pictures waiting in them.
+ */
+public class PicturePipeline implements AutoCloseable
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The transform applied to every picture. */
+	private final UnaryOperator<Picture> transform;
+
+	/** Runs the loads and the writes. */
+	private final ExecutorService io;
+
+	/** Whether io runs its tasks on virtual threads. */
+	private final boolean virtualThreads;
+
+	/** Runs the transforms. */
+	private final ExecutorService cpu;
+
+	/** One permit per file that may be in the pipeline at once. */
+	private final Semaphore inFlight;
+
+	/** The number of permits of inFlight. */
+	private final int maxInFlight;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * Creates a pipeline.
+	 *
+	 * @param transform The transform to apply to every picture.
+	 * @param cpuThreads The number of threads running the transform.
+	 * @param maxInFlight The largest number of files in the pipeline at
+	 * 	once.
+	 */
+	public PicturePipeline(UnaryOperator<Picture> transform, int cpuThreads,
+			int maxInFlight) {
+		if (cpuThreads < 1 || maxInFlight < 1)
+			throw new IllegalArgumentException("Invalid pipeline of " +
+					cpuThreads + " threads and " + maxInFlight + " files");
+
+		this.transform = transform;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.maxInFlight = maxInFlight;
+		this.cpu = new ThreadPoolExecutor(cpuThreads, cpuThreads, 0,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(maxInFlight));
+
+		ExecutorService virtual = newVirtualThreadExecutor();
+		this.virtualThreads = virtual != null;
+		this.io = virtual != null ? virtual : Executors.newCachedThreadPool();
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * @return An executor starting a virtual thread per task, or null if
+	 * 	this Java runtime has no virtual threads.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class
+			.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+			// Before Java 21, or without --enable-preview on Java 19 and 20.
+			return null;
+		}
+	}
+
+	/**
+	 * @return Whether loads and writes run on virtual threads.
+	 */
+	public boolean usesVirtualThreads() { return virtualThreads; }
+
+	/**
+	 * Submits a file to the pipeline, waiting first if the pipeline is
+	 * 	full.
+	 *
+	 * @param input The picture to load.
+	 * @param output Where to write the transformed picture.
+	 *
+	 * @return A future completed with the timings of the file once it is
+	 * 	written, or completed exceptionally if it could not be loaded,
+	 * 	transformed, or written.
+	 *
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public CompletableFuture<Result> submit(final File input,
+			final File output) throws InterruptedException {
+		inFlight.acquire();
+
+		final Result result = new Result(input);
+		CompletableFuture<Result> future;
+		try {
+			future = CompletableFuture.supplyAsync(() -> {
+				long start = System.nanoTime();
+				Picture picture = new Picture();
+				try {
+					picture.loadOrFail(input.getPath());
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+				result.pixels = (long) picture.getWidth() * picture.getHeight();
+				result.loadNanos = System.nanoTime() - start;
+				return picture;
+			}, io).thenApplyAsync(picture -> {
+				long start = System.nanoTime();
+				Picture transformed = transform.apply(picture);
+				result.transformNanos = System.nanoTime() - start;
+				return transformed;
+			}, cpu).thenApplyAsync(transformed -> {
+				long start = System.nanoTime();
+				try {
+					transformed.writeOrFail(output.getPath());
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+				result.writeNanos = System.nanoTime() - start;
+				return result;
+			}, io);
+		} catch (RuntimeException ex) {
+			inFlight.release();
+			throw ex;
+		}
+
+		future.whenComplete((done, failure) -> inFlight.release());
+		return future;
+	}
+
+	/**
+	 * Waits for the files submitted to be written, then stops the threads
+	 * 	of the pipeline. The executors are only shut down once every file
+	 * 	is out of the pipeline, since a file still in flight has stages
+	 * 	left to schedule on them.
+	 */
+	public void close() {
+		try {
+			// Each file holds a permit until its future is completed.
+			inFlight.acquire(maxInFlight);
+			cpu.shutdown();
+			io.shutdown();
+			cpu.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			io.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException ex) {
+			cpu.shutdownNow();
+			io.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	////////////////////////////// Nested classes /////////////////////////////
+
+	/**
+	 * The size of a processed file and the time spent on it.
+	 */
+	public static class Result
+	{
+		/** The file loaded. */
+		public final File input;
+
+		/** The number of pixels in the picture. */
+		public volatile long pixels;
+
+		/** The time spent loading it, in nanoseconds. */
+		public volatile long loadNanos;
+
+		/** The time spent transforming it, in nanoseconds. */
+		public volatile long transformNanos;
+
+		/** The time spent writing it, in nanoseconds. */
+		public volatile long writeNanos;
+
+		Result(File input) { this.input = input; }
+
+		public String toString() {
+			long total = loadNanos + transformNanos + writeNanos;
+			return String.format(Locale.ROOT, "%s: %.1f megapixels, " +
+					"load %.1f ms, transform %.1f ms, write %.1f ms, " +
+					"%.1f megapixels/s", input.getName(), pixels / 1e6,
+					loadNanos / 1e6, transformNanos / 1e6, writeNanos / 1e6,
+					pixels / 1e6 / (total / 1e9));
+		}
+	}
+
+} // End of PicturePipeline class.
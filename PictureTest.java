@@ -1,4 +1,28 @@
 import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
@@ -337,5 +361,881 @@ public class PictureTest extends TestCase {
 			
 	}
 	
-}
+	/*
+	 * Validate that the color transforms do not allocate anything per
+	 * pixel: apart from the new Picture itself, lighten and grayscale
+	 * should allocate almost nothing. The allocations are only counted
+	 * on this thread, so the work must not be split across other threads.
+	 */
+	public void testColorTransformsDoNotAllocatePerPixel()
+	{
+		if (!(ManagementFactory.getThreadMXBean()
+				instanceof com.sun.management.ThreadMXBean)) {
+			return; // Allocation counters are not available on this JVM.
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)
+				ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		Picture pic = new Picture(1000, 1000);
+		long rasterBytes = 4L * pic.getWidth() * pic.getHeight();
+		int parallelism = RowBandExecutor.getParallelism();
+		try {
+			RowBandExecutor.setParallelism(1);
+			pic.lighten(1).grayscale(); // Warm up class loading.
+
+			long before = threads.getThreadAllocatedBytes(thread);
+			Picture picTest = pic.lighten(10).grayscale();
+			long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+			assertNotNull(picTest);
+			assertTrue("allocated " + allocated + " bytes",
+					allocated < 2 * rasterBytes + 1024 * 1024);
+		} finally {
+			RowBandExecutor.setParallelism(parallelism);
+		}
+	}
+	
+	/*
+	 * Validate that a pipeline of color operations gives the same result
+	 * as calling the operations one after the other, and does not modify
+	 * the original Picture object.
+	 */
+	public void testPointOpPipeline()
+	{
+		Picture pic 		= Picture.loadPicture("Creek.bmp");
+		Picture picCopy 	= new Picture(pic);
+		Picture picCorrect	= pic.grayscale().lighten(30).addBlue(10)
+				.negate().darken(5).addRed(200).addGreen(-20);
+		Picture picTest		= pic.pointOps().grayscale().lighten(30)
+				.addBlue(10).negate().darken(5).addRed(200).addGreen(-20)
+				.run();
+		assertTrue(pic.equals(picCopy));
+		assertTrue(picCorrect.equals(picTest));
+		assertTrue(pic.equals(pic.pointOps().run()));
+		assertTrue(pic.negate().equals(
+				pic.pointOps().then(value -> ~value).run()));
+	}
+	
+	/*
+	 * Validate that splitting the work across threads gives exactly the
+	 * same result as running it on a single thread.
+	 */
+	public void testParallelMatchesSequential()
+	{
+		Picture pic 		= Picture.loadPicture("Creek.bmp");
+		Picture bg 			= Picture.loadPicture("CalOriginal.bmp");
+		int parallelism 	= RowBandExecutor.getParallelism();
+		try {
+			RowBandExecutor.setParallelism(1);
+			Picture edges	= pic.showEdges(20);
+			Picture blurred	= pic.blur(2);
+			Picture keyed	= pic.chromaKey(10, 10, bg, 40);
+			Picture lighter	= pic.lighten(25);
+
+			RowBandExecutor.setParallelism(7);
+			assertTrue(edges.equals(pic.showEdges(20)));
+			assertTrue(blurred.equals(pic.blur(2)));
+			assertTrue(keyed.equals(pic.chromaKey(10, 10, bg, 40)));
+			assertTrue(lighter.equals(pic.lighten(25)));
+		} finally {
+			RowBandExecutor.setParallelism(parallelism);
+		}
+	}
+	
+	/*
+	 * Validate that blur gives the same average as the brute-force
+	 * blurColor for small and very large radii, including radii larger
+	 * than the picture.
+	 */
+	public void testBlurRadii()
+	{
+		Picture colleen 	= Picture.loadPicture("Colleen.bmp");
+		Picture pic 		= new Picture(23, 17);
+		for (int y = 0; y < pic.getHeight(); y++) {
+			for (int x = 0; x < pic.getWidth(); x++) {
+				pic.setBasicPixel(x, y, colleen.getBasicPixel(x + 60, y + 40));
+			}
+		}
+
+		int[] radii = { 0, 1, 4, 11, 30 };
+		for (int radius : radii) {
+			Picture picTest = pic.blur(radius);
+			for (int y = 0; y < pic.getHeight(); y++) {
+				for (int x = 0; x < pic.getWidth(); x++) {
+					assertEquals(blurColor(pic, x, y, radius), picTest.getPixel(x, y).getColor());
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Averages the colors of the pixels of the square window around (x, y)
+	 * that are in the picture, one pixel at a time, as blur used to.
+	 */
+	private static Color blurColor(Picture pic, int x, int y, int radius)
+	{
+		int sumRed = 0, sumGreen = 0, sumBlue = 0, count = 0;
+		for (int y1 = Math.max(0, y - radius); y1 <= Math.min(pic.getHeight() - 1, y + radius); y1++) {
+			for (int x1 = Math.max(0, x - radius); x1 <= Math.min(pic.getWidth() - 1, x + radius); x1++) {
+				Pixel pixel = pic.getPixel(x1, y1);
+				sumRed 		+= pixel.getRed();
+				sumGreen 	+= pixel.getGreen();
+				sumBlue 	+= pixel.getBlue();
+				count++;
+			}
+		}
+		return new Color(sumRed / count, sumGreen / count, sumBlue / count);
+	}
+	
+	/*
+	 * Validate that paintBucket can fill a region covering a whole large
+	 * picture without running out of stack, and that it stops at pixels
+	 * outside the threshold.
+	 */
+	public void testPaintBucketLargeRegion()
+	{
+		Picture pic 		= new Picture(3000, 2000);
+		for (int y = 0; y < pic.getHeight(); y++) {
+			pic.setBasicPixel(1500, y, Color.black.getRGB()); // A wall...
+		}
+		pic.setBasicPixel(1500, 1000, Color.white.getRGB()); // ...with a gap.
+		pic.setBasicPixel(2999, 0, new Color(250, 250, 250).getRGB());
+
+		Picture picTest		= pic.paintBucket(10, 10, 10, Color.green);
+		assertEquals(Color.green, picTest.getPixel(0, 0).getColor());
+		assertEquals(Color.green, picTest.getPixel(2999, 1999).getColor());
+		assertEquals(Color.green, picTest.getPixel(2999, 0).getColor());
+		assertEquals(Color.green, picTest.getPixel(1500, 1000).getColor());
+		assertEquals(Color.black, picTest.getPixel(1500, 999).getColor());
+		assertEquals(Color.white, pic.getPixel(0, 0).getColor());
+	}
+	
+	/**
+	 * Test that every rotation and flip matches the per-pixel helpers on a
+	 * 	picture large enough to be split into bands and blocks.
+	 */
+	public void testRotateAndFlipMatchHelpers()
+	{
+		Picture pic 		= new Picture(517, 301);
+		for (int y = 0; y < pic.getHeight(); y++) {
+			for (int x = 0; x < pic.getWidth(); x++) {
+				pic.setBasicPixel(x, y, y * pic.getWidth() + x);
+			}
+		}
+
+		Picture cw 			= new Picture(pic.getHeight(), pic.getWidth());
+		Picture ccw 		= new Picture(pic.getHeight(), pic.getWidth());
+		Picture horizontal 	= new Picture(pic.getWidth(), pic.getHeight());
+		Picture vertical 	= new Picture(pic.getWidth(), pic.getHeight());
+		for (int y = 0; y < pic.getHeight(); y++) {
+			for (int x = 0; x < pic.getWidth(); x++) {
+				cw.applyRotateTransformationMatrix(x, y, pic, true);
+				ccw.applyRotateTransformationMatrix(x, y, pic, false);
+				horizontal.flipPixelHorizontalAxis(x, y, pic);
+				vertical.flipPixelVerticalAxis(x, y, pic);
+			}
+		}
 
+		assertTrue(cw.equals(pic.rotate(1)));
+		assertTrue(cw.equals(pic.rotate(-3)));
+		assertTrue(ccw.equals(pic.rotate(-1)));
+		assertTrue(ccw.equals(pic.rotate(7)));
+		assertTrue(horizontal.equals(pic.flip(Picture.HORIZONTAL)));
+		assertTrue(vertical.equals(pic.flip(Picture.VERTICAL)));
+		assertTrue(pic.equals(pic.rotate(2).rotate(-2)));
+		assertTrue(cw.flip(Picture.HORIZONTAL).equals(
+				pic.flip(Picture.FORWARD_DIAGONAL)));
+		assertTrue(cw.flip(Picture.VERTICAL).equals(
+				pic.flip(Picture.BACKWARD_DIAGONAL)));
+		assertTrue(pic.equals(pic.flip(Picture.FORWARD_DIAGONAL)
+				.flip(Picture.FORWARD_DIAGONAL)));
+	}
+	
+	/**
+	 * Test that the integer distance checks agree with colorDistance, both
+	 * 	as is and truncated to an int, around every threshold.
+	 */
+	public void testColorDistanceComparisons()
+	{
+		int[] values = { 0x000000, 0xffffff, 0x102030, 0x112233, 0x0a0b0c,
+				0x80ff00, 0x7f00ff, 0x030405, 0x000005, 0x010101 };
+		for (int value1 : values) {
+			for (int value2 : values) {
+				double distance = Pixel.colorDistance(new Color(value1),
+						new Color(value2));
+				assertEquals((int) (distance * distance + 0.5),
+						Pixel.colorDistanceSquared(value1, value2));
+				for (int threshold = -2; threshold <= 450; threshold++) {
+					assertEquals(distance <= threshold,
+							Pixel.isWithinDistance(value1, value2, threshold));
+					assertEquals((int) distance <= threshold,
+							Pixel.isWithinTruncatedDistance(value1, value2,
+									threshold));
+				}
+			}
+		}
+		assertTrue(Pixel.isWithinTruncatedDistance(0, 0xffffff,
+				Integer.MAX_VALUE));
+	}
+	
+	/**
+	 * Test that pictures converted to ASCII art on several threads at once
+	 * 	all share the same characters and get the same result.
+	 */
+	public void testConvertToAsciiConcurrently() throws Exception
+	{
+		final Picture pic 		= Picture.loadPicture("mickey.bmp");
+		final Picture picCorrect 	= Picture.loadPicture("mickey_ascii.bmp");
+		ExecutorService executor 	= Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Picture>> results = new ArrayList<Future<Picture>>();
+			for (int i = 0; i < 16; i++) {
+				results.add(executor.submit(() -> pic.convertToAscii()));
+			}
+			for (Future<Picture> result : results) {
+				assertTrue(picCorrect.equals(result.get()));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertSame(AsciiGlyphs.getInstance(), AsciiGlyphs.getInstance());
+	}
+	
+	/**
+	 * Test that AsciiRenderer matches convertToAscii with its default
+	 * 	settings, and honors the cell size, ramp, and mode.
+	 */
+	public void testAsciiRenderer()
+	{
+		Picture pic 		= Picture.loadPicture("mickey.bmp");
+		Picture picCopy 	= new Picture(pic);
+		AsciiRenderer renderer 	= new AsciiRenderer();
+		assertTrue(pic.convertToAscii().equals(renderer.renderToPicture(pic)));
+
+		String[] lines = renderer.renderToString(pic).split("\n");
+		assertEquals((pic.getHeight() + 19) / 20, lines.length);
+		for (String line : lines) {
+			assertEquals((pic.getWidth() + 9) / 10, line.length());
+		}
+
+		renderer.setCellSize(4, 8).setRamp("#+. ");
+		lines = renderer.renderToString(pic).split("\n");
+		assertEquals((pic.getHeight() + 7) / 8, lines.length);
+		for (String line : lines) {
+			assertEquals((pic.getWidth() + 3) / 4, line.length());
+			assertTrue(line.matches("[#+. ]*"));
+		}
+		Picture bitmap = renderer.renderToPicture(pic);
+		assertEquals(pic.getWidth(), bitmap.getWidth());
+		assertEquals(pic.getHeight(), bitmap.getHeight());
+
+		String ansi = renderer.setMode(AsciiRenderer.Mode.ANSI).renderToString(pic);
+		assertTrue(ansi.startsWith("\u001b[38;2;"));
+		assertEquals(lines.length, ansi.split("\n").length);
+		assertTrue(pic.equals(picCopy));
+	}
+	
+	/**
+	 * Test that BmpCodec reads the sample pictures like ImageIO does, writes
+	 * 	files it can read back, and transforms files band by band with the
+	 * 	same result as transforming the whole picture.
+	 */
+	public void testBmpCodec() throws Exception
+	{
+		for (String name : new String[] { "CalOriginal.bmp", "Gray.bmp", "space.bmp", "mickey.bmp" }) {
+			BmpCodec.Reader reader = new BmpCodec.Reader(
+					new File(PictureTest.class.getResource(name).toURI()));
+			try {
+				assertTrue(Picture.loadPicture(name).equals(reader.readPicture()));
+			} finally {
+				reader.close();
+			}
+		}
+		try {
+			new BmpCodec.Reader(new File(
+					PictureTest.class.getResource("Creek.bmp").toURI())).close();
+			fail("Creek.bmp is not a BMP file");
+		} catch (IOException expected) {
+		}
+
+		Picture pic 	= Picture.loadPicture("mickey.bmp");
+		File input 		= File.createTempFile("bmpcodec", ".bmp");
+		File output 	= File.createTempFile("bmpcodec", ".bmp");
+		try {
+			BmpCodec.Writer writer = new BmpCodec.Writer(input, pic.getWidth(), pic.getHeight());
+			try {
+				writer.writePicture(pic);
+			} finally {
+				writer.close();
+			}
+			assertTrue(pic.equals(new Picture(input.getPath())));
+
+			BmpCodec.transform(input, output, 7, 0, band -> band.grayscale());
+			assertTrue(pic.grayscale().equals(new Picture(output.getPath())));
+			BmpCodec.transform(input, output, 7, 3, band -> band.blur(3));
+			assertTrue(pic.blur(3).equals(new Picture(output.getPath())));
+			BmpCodec.transform(input, output, 5, 1, band -> band.showEdges(20));
+			assertTrue(pic.showEdges(20).equals(new Picture(output.getPath())));
+
+			// A picture whose rows take more than one write and one read of
+			// the file.
+			Picture large 	= new Picture(2600, 2400);
+			for (int y = 0; y < large.getHeight(); y++)
+				for (int x = 0; x < large.getWidth(); x++)
+					large.setBasicPixel(x, y, x * 7919 + y * 104729);
+			writer = new BmpCodec.Writer(input, large.getWidth(), large.getHeight());
+			try {
+				writer.writePicture(large);
+			} finally {
+				writer.close();
+			}
+			BmpCodec.Reader reader = new BmpCodec.Reader(input);
+			try {
+				assertTrue(large.equals(reader.readPicture()));
+			} finally {
+				reader.close();
+			}
+		} finally {
+			input.delete();
+			output.delete();
+		}
+	}
+	
+	/**
+	 * Test that PictureBatch applies a chain of transforms to the pictures
+	 * 	matching a glob, and rejects unknown transforms.
+	 */
+	public void testPictureBatch() throws Exception
+	{
+		File directory 	= Files.createTempDirectory("batch").toFile();
+		File output 	= new File(directory, "out");
+		Picture pic 	= Picture.loadPicture("Gray.bmp");
+		pic.writeOrFail(new File(directory, "a.bmp").getPath());
+		pic.writeOrFail(new File(directory, "b.bmp").getPath());
+		try {
+			PrintStream report = new PrintStream(new ByteArrayOutputStream());
+			assertEquals(0, PictureBatch.run(new String[] { "-j", "2",
+					directory.getPath() + File.separator + "*.bmp",
+					"grayscale, blur:2,rotate:1" }, report));
+			Picture expected = pic.grayscale().blur(2).rotate(1);
+			assertTrue(expected.equals(new Picture(new File(output, "a.bmp").getPath())));
+			assertTrue(expected.equals(new Picture(new File(output, "b.bmp").getPath())));
+
+			assertEquals(2, PictureBatch.run(new String[] {
+					directory.getPath(), "grayscale,sharpen:3" }, report));
+			assertEquals(2, PictureBatch.run(new String[] {
+					directory.getPath(), "blur" }, report));
+		} finally {
+			for (File dir : new File[] { output, directory }) {
+				for (File file : dir.listFiles()) {
+					file.delete();
+				}
+				dir.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Test that PicturePipeline transforms and writes every file submitted,
+	 * 	even with room for only one file at a time, and reports files that
+	 * 	cannot be loaded.
+	 */
+	public void testPicturePipeline() throws Exception
+	{
+		File directory 	= Files.createTempDirectory("pipeline").toFile();
+		File notAPicture 	= new File(directory, "notes.bmp");
+		Files.write(notAPicture.toPath(), new byte[] { 1, 2, 3 });
+		Picture pic 	= Picture.loadPicture("Gray.bmp");
+		try {
+			List<CompletableFuture<PicturePipeline.Result>> results =
+				new ArrayList<CompletableFuture<PicturePipeline.Result>>();
+			PicturePipeline pipeline = new PicturePipeline(picture -> picture.negate(), 2, 1);
+			try {
+				for (int i = 0; i < 5; i++) {
+					File input = new File(directory, "in" + i + ".bmp");
+					pic.lighten(i * 10).writeOrFail(input.getPath());
+					results.add(pipeline.submit(input, new File(directory, "out" + i + ".bmp")));
+				}
+				results.add(pipeline.submit(notAPicture, new File(directory, "bad.bmp")));
+			} finally {
+				pipeline.close();
+			}
+
+			for (int i = 0; i < 5; i++) {
+				assertEquals(pic.getWidth() * pic.getHeight(), results.get(i).get().pixels);
+				assertTrue(pic.lighten(i * 10).negate().equals(
+						new Picture(new File(directory, "out" + i + ".bmp").getPath())));
+			}
+			try {
+				results.get(5).get();
+				fail("notes.bmp is not a picture");
+			} catch (ExecutionException expected) {
+			}
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	/**
+	 * Test that closing the pipeline right after submitting waits for every
+	 * 	file still in flight, rather than rejecting their later stages.
+	 */
+	public void testPicturePipelineClose() throws Exception
+	{
+		File directory 	= Files.createTempDirectory("pipeline").toFile();
+		Picture pic 	= new Picture(1000, 1000);
+		pic.setAllPixelsToAColor(new Color(40, 120, 200));
+		pic.setBasicPixel(500, 500, 0xffffff);
+		try {
+			List<CompletableFuture<PicturePipeline.Result>> results =
+				new ArrayList<CompletableFuture<PicturePipeline.Result>>();
+			PicturePipeline pipeline = new PicturePipeline(picture -> picture.blur(3), 2, 4);
+			for (int i = 0; i < 4; i++) {
+				File input = new File(directory, "in" + i + ".bmp");
+				pic.writeOrFail(input.getPath());
+				results.add(pipeline.submit(input, new File(directory, "out" + i + ".bmp")));
+			}
+			pipeline.close();
+
+			Picture blurred = pic.blur(3);
+			for (int i = 0; i < 4; i++) {
+				assertTrue(results.get(i).isDone());
+				assertEquals(pic.getWidth() * pic.getHeight(), results.get(i).get().pixels);
+				assertTrue(blurred.equals(new Picture(new File(directory, "out" + i + ".bmp").getPath())));
+			}
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	/**
+	 * Test that ChannelLut gives the same results as the per-pixel color
+	 * 	operations, that composed tables match applying them in turn, and
+	 * 	that the pipeline fuses consecutive channel operations.
+	 */
+	public void testChannelLut()
+	{
+		Picture pic 		= Picture.loadPicture("Creek.bmp");
+		for (int amount : new int[] { -300, -40, 0, 17, 255, 300 }) {
+			assertTrue(pic.mapPixels(value -> Picture.toLighter(value, amount)).equals(pic.lighten(amount)));
+			assertTrue(pic.mapPixels(value -> Picture.toDarker(value, amount)).equals(pic.darken(amount)));
+			assertTrue(pic.mapPixels(value -> Picture.toMoreRed(value, amount)).equals(pic.addRed(amount)));
+			assertTrue(pic.mapPixels(value -> Picture.toMoreGreen(value, amount)).equals(pic.addGreen(amount)));
+			assertTrue(pic.mapPixels(value -> Picture.toMoreBlue(value, amount)).equals(pic.addBlue(amount)));
+		}
+		assertTrue(pic.mapPixels(value -> Picture.toNegative(value)).equals(pic.negate()));
+
+		ChannelLut gamma 	= ChannelLut.gamma(2.2);
+		ChannelLut levels 	= ChannelLut.levels(20, 230, 1.0, 0, 255);
+		ChannelLut curve 	= ChannelLut.curve(new int[] { 0, 128, 255 }, new int[] { 0, 100, 255 });
+		assertTrue(pic.applyLut(gamma).applyLut(levels).applyLut(curve).equals(
+				pic.applyLut(gamma.then(levels).then(curve))));
+		assertEquals(0x00ff8000, ChannelLut.identity().applyAsInt(0xffff8000));
+		assertEquals(0, levels.applyAsInt(0x101010));
+		assertEquals(0xffffff, levels.applyAsInt(0xf0f0f0));
+		assertEquals(100, curve.applyAsInt(128));
+		assertEquals(50, curve.applyAsInt(64));
+
+		PointOpPipeline pipeline = pic.pointOps().lighten(30).addBlue(10).negate()
+				.grayscale().gamma(0.8).darken(5);
+		assertEquals(3, pipeline.size());
+		assertTrue(pic.lighten(30).addBlue(10).negate().grayscale()
+				.applyLut(ChannelLut.gamma(0.8)).darken(5).equals(pipeline.run()));
+	}
+	
+	/**
+	 * Test that the scalar kernels match the per-pixel color operations, and
+	 * 	that the vector kernels, when they are available, match the scalar
+	 * 	ones over ranges of every length.
+	 */
+	public void testPixelKernels()
+	{
+		Picture pic 		= Picture.loadPicture("Creek.bmp");
+		int[] source 		= pic.getRasterForReading();
+		PixelKernels scalar = PixelKernels.scalar();
+
+		int[] pixels 		= source.clone();
+		scalar.gray(pixels, 0, pixels.length);
+		assertTrue(Arrays.equals(pixels, pic.mapPixels(value -> Picture.toGray(value)).getRasterForReading()));
+		pixels 				= source.clone();
+		scalar.negate(pixels, 0, pixels.length);
+		assertTrue(Arrays.equals(pixels, pic.applyLut(ChannelLut.negate()).getRasterForReading()));
+		pixels 				= source.clone();
+		scalar.add(pixels, 0, pixels.length, 40, -300, 0);
+		assertTrue(Arrays.equals(pixels, pic.applyLut(ChannelLut.add(40, -300, 0)).getRasterForReading()));
+
+		PixelKernels vector = PixelKernels.vector();
+		if (vector == null)
+			return;
+
+		Random random 		= new Random(19);
+		int[] values 		= new int[1000];
+		for (int i = 0; i < values.length; i++)
+			values[i] 		= random.nextInt() & 0x00ffffff;
+		values[0] 			= 0x00ffffff;
+		values[1] 			= 0;
+		for (int to = 0; to <= 70; to++) {
+			int from 		= to / 3;
+			int[] expected 	= values.clone();
+			int[] actual 	= values.clone();
+			scalar.gray(expected, from, to);
+			vector.gray(actual, from, to);
+			assertTrue(Arrays.equals(expected, actual));
+			scalar.negate(expected, from, to);
+			vector.negate(actual, from, to);
+			assertTrue(Arrays.equals(expected, actual));
+			scalar.add(expected, from, to, to - 35, 255, Integer.MIN_VALUE);
+			vector.add(actual, from, to, to - 35, 255, Integer.MIN_VALUE);
+			assertTrue(Arrays.equals(expected, actual));
+		}
+		int[] expected 		= values.clone();
+		int[] actual 		= values.clone();
+		scalar.gray(expected, 0, values.length);
+		vector.gray(actual, 0, values.length);
+		assertTrue(Arrays.equals(expected, actual));
+	}
+	
+	/**
+	 * Test that the content hash matches the reference xxHash64, is reused
+	 * 	until the pixels change, and agrees with equals and hashCode.
+	 */
+	public void testContentHash()
+	{
+		assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new int[0], 0, 0, 0));
+		assertEquals(0xDE0327B0D25D92CCL, XxHash64.hash(new int[] { 0x64636261 }, 0, 1, 0));
+		int[] bytes 		= new int[10];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] 		= (4 * i) | (4 * i + 1) << 8 | (4 * i + 2) << 16 | (4 * i + 3) << 24;
+		assertEquals(0xFC9F7A1B24012CB5L, XxHash64.hash(bytes, 0, bytes.length, 7));
+
+		Picture pic 		= Picture.loadPicture("Creek.bmp");
+		Picture picCopy 	= new Picture(pic);
+		assertEquals(pic.getContentHash(), picCopy.getContentHash());
+		assertEquals(pic.hashCode(), picCopy.hashCode());
+		assertTrue(pic.equals(picCopy));
+
+		Set<Picture> pictures = new HashSet<Picture>();
+		pictures.add(pic);
+		pictures.add(picCopy);
+		assertEquals(1, pictures.size());
+
+		long hash 			= pic.getContentHash();
+		int modification 	= picCopy.getModificationCount();
+		int original 		= picCopy.getBasicPixel(3, 4);
+		picCopy.setBasicPixel(3, 4, original ^ 1);
+		assertTrue(picCopy.getModificationCount() != modification);
+		assertTrue(hash != picCopy.getContentHash());
+		assertFalse(pic.equals(picCopy));
+		picCopy.setBasicPixel(3, 4, original);
+		assertEquals(hash, picCopy.getContentHash());
+		assertTrue(pic.equals(picCopy));
+
+		picCopy.getRasterData()[0] ^= 0x10;
+		assertTrue(hash != picCopy.getContentHash());
+		assertFalse(pic.equals(picCopy));
+
+		Picture pic90 		= new Picture(pic.getHeight(), pic.getWidth());
+		pic90.setPixels(pic.getPixels(null));
+		assertFalse(pic.equals(pic90));
+		assertTrue(pic.getContentHash() != pic90.getContentHash());
+
+		// Effects only read their source, so its hash stays cached. The
+		// explorer runs them off the event dispatch thread on the picture
+		// it shows, which must therefore not be touched.
+		modification 		= pic.getModificationCount();
+		pic.rotate(1);
+		pic.blur(2);
+		pic.showEdges(20);
+		pic.convertToAscii();
+		new AsciiRenderer().renderToString(pic);
+		pic.grayscale();
+		pic.negate();
+		pic.lighten(10);
+		pic.addBlue(10);
+		pic.flip(Picture.FORWARD_DIAGONAL);
+		pic.chromaKey(1, 1, new Picture(pic90), 30);
+		pic.paintBucket(1, 1, 30, new Color(0, 0, 255));
+		Picture gray 		= pic.grayscale();
+		new EditHistory().prepare("gray", pic, gray, gray.takeDirtyRegion(), null, null);
+		assertEquals(modification, pic.getModificationCount());
+
+		// Drawing later with a Graphics handed out earlier is not missed.
+		Picture drawn 		= new Picture(pic);
+		Picture target 		= new Picture(pic);
+		target.setBasicPixel(0, 0, target.getBasicPixel(0, 0) ^ 0xff);
+		Graphics2D graphics = drawn.createGraphics();
+		drawn.getContentHash();
+		target.getContentHash();
+		assertFalse(drawn.equals(target));
+		graphics.setColor(new Color(target.getBasicPixel(0, 0)));
+		graphics.fillRect(0, 0, 1, 1);
+		graphics.dispose();
+		assertTrue(drawn.equals(target));
+		assertEquals(target.getContentHash(), drawn.getContentHash());
+	}
+	
+	/**
+	 * Test that pixel writes and paint bucket fills dirty only the pixels
+	 * 	they change, and that copyRegion copies and dirties only its region.
+	 */
+	public void testDirtyRegion()
+	{
+		Picture pic 		= Picture.loadPicture("Creek.bmp");
+		assertEquals(new Rectangle(0, 0, pic.getWidth(), pic.getHeight()), pic.takeDirtyRegion());
+		assertNull(pic.takeDirtyRegion());
+
+		pic.setBasicPixel(10, 20, 0);
+		pic.setBasicPixel(15, 12, 0);
+		assertEquals(new Rectangle(10, 12, 6, 9), pic.takeDirtyRegion());
+		assertNull(pic.takeDirtyRegion());
+
+		Picture picCorrect 	= new Picture(pic);
+		picCorrect.paintPixels(0, 0, 30, new Color(pic.getBasicPixel(0, 0)), Color.red);
+		Picture picTest 	= pic.paintBucket(0, 0, 30, Color.red);
+		assertTrue(picCorrect.equals(picTest));
+		Rectangle filled 	= picTest.takeDirtyRegion();
+		assertNotNull(filled);
+		assertTrue(filled.width < pic.getWidth() || filled.height < pic.getHeight());
+		for (int y = 0; y < pic.getHeight(); y++)
+			for (int x = 0; x < pic.getWidth(); x++)
+				if (!filled.contains(x, y))
+					assertEquals(pic.getBasicPixel(x, y), picTest.getBasicPixel(x, y));
+
+		Picture picCopy 	= new Picture(pic);
+		picCopy.takeDirtyRegion();
+		picCopy.copyRegion(picTest, filled);
+		assertEquals(filled, picCopy.takeDirtyRegion());
+		assertTrue(picCopy.equals(picTest));
+	}
+	
+	/**
+	 * Test that the zoom pyramid picks the right levels, averages 2 by 2
+	 * 	blocks, keeps only the most recent levels, and is rebuilt after the
+	 * 	picture changes.
+	 */
+	public void testZoomPyramid()
+	{
+		Picture pic 		= new Picture(1001, 600);
+		Random random 		= new Random(22);
+		for (int y = 0; y < pic.getHeight(); y++)
+			for (int x = 0; x < pic.getWidth(); x++)
+				pic.setBasicPixel(x, y, random.nextInt());
+
+		ZoomPyramid pyramid = new ZoomPyramid(pic, 2);
+		assertEquals(0, pyramid.levelFor(5.0));
+		assertEquals(0, pyramid.levelFor(0.75));
+		assertEquals(1, pyramid.levelFor(0.5));
+		assertEquals(2, pyramid.levelFor(0.25));
+		assertEquals(3, pyramid.levelFor(0.1));
+		assertSame(pic.getImage(), pyramid.getLevel(0));
+
+		BufferedImage half 	= pyramid.getLevel(1);
+		assertEquals(501, half.getWidth());
+		assertEquals(300, half.getHeight());
+		for (int y = 0; y < half.getHeight(); y++) {
+			for (int x = 0; x < half.getWidth(); x++) {
+				int right 	= Math.min(2 * x + 1, pic.getWidth() - 1);
+				int[] block = { pic.getBasicPixel(2 * x, 2 * y), pic.getBasicPixel(right, 2 * y),
+						pic.getBasicPixel(2 * x, 2 * y + 1), pic.getBasicPixel(right, 2 * y + 1) };
+				int value 	= half.getRGB(x, y);
+				assertEquals((Pixel.getRed(block[0]) + Pixel.getRed(block[1]) + Pixel.getRed(block[2]) + Pixel.getRed(block[3]) + 2) / 4, Pixel.getRed(value));
+				assertEquals((Pixel.getGreen(block[0]) + Pixel.getGreen(block[1]) + Pixel.getGreen(block[2]) + Pixel.getGreen(block[3]) + 2) / 4, Pixel.getGreen(value));
+				assertEquals((Pixel.getBlue(block[0]) + Pixel.getBlue(block[1]) + Pixel.getBlue(block[2]) + Pixel.getBlue(block[3]) + 2) / 4, Pixel.getBlue(value));
+			}
+		}
+
+		BufferedImage quarter = pyramid.getLevel(2);
+		assertSame(quarter, pyramid.getImageFor(0.25));
+		pyramid.getLevel(3);
+		assertEquals(2, pyramid.getCachedLevelCount());
+		assertNotSame(half, pyramid.getLevel(1));
+
+		quarter 			= pyramid.getLevel(2);
+		assertSame(quarter, pyramid.getLevel(2));
+		pic.setBasicPixel(0, 0, 0);
+		assertNotSame(quarter, pyramid.getLevel(2));
+	}
+	
+	/**
+	 * Test that monitored work reports every row it processes, gives the
+	 * 	same results, and stops with a CancellationException once it is
+	 * 	cancelled, on one thread and on several.
+	 */
+	public void testRowBandMonitor()
+	{
+		Picture pic 		= Picture.loadPicture("Creek.bmp");
+		Picture expected 	= pic.blur(2);
+		int parallelism 	= RowBandExecutor.getParallelism();
+		try {
+			for (int threads : new int[] { 1, 4 }) {
+				RowBandExecutor.setParallelism(threads);
+				final AtomicInteger started 	= new AtomicInteger();
+				final AtomicInteger done 		= new AtomicInteger();
+				final AtomicBoolean cancelled 	= new AtomicBoolean();
+				RowBandExecutor.Monitor monitor = new RowBandExecutor.Monitor() {
+					public void rowsStarted(int height) { started.addAndGet(height); }
+					public void rowsDone(int rows) { done.addAndGet(rows); }
+					public boolean isCancelled() { return cancelled.get(); }
+				};
+
+				assertTrue(expected.equals(RowBandExecutor.runMonitored(monitor, () -> pic.blur(2))));
+				assertTrue(started.get() >= pic.getHeight());
+				assertEquals(started.get(), done.get());
+
+				cancelled.set(true);
+				try {
+					RowBandExecutor.runMonitored(monitor, () -> pic.grayscale());
+					fail("The cancelled work should not complete");
+				} catch (CancellationException ex) {
+					// Expected.
+				}
+
+				// Work outside of runMonitored is not affected.
+				assertTrue(expected.equals(pic.blur(2)));
+			}
+		} finally {
+			RowBandExecutor.setParallelism(parallelism);
+		}
+	}
+	
+	/**
+	 * Test that a scaled ImageDisplay paints the same pixels in tiles as
+	 * 	scaling the whole image at once, keeps the tiles it painted, and
+	 * 	drops those over a region of the image that changed.
+	 */
+	public void testImageDisplayTiles()
+	{
+		Picture pic 		= new Picture(700, 500);
+		Random random 		= new Random(24);
+		for (int y = 0; y < pic.getHeight(); y++)
+			for (int x = 0; x < pic.getWidth(); x++)
+				pic.setBasicPixel(x, y, random.nextInt());
+
+		for (double zoom : new double[] { 0.6, 1.5 }) {
+			int width 		= (int) (pic.getWidth() * zoom);
+			int height 		= (int) (pic.getHeight() * zoom);
+			ImageDisplay display = new ImageDisplay(pic.getImage(), -100, -100);
+			display.setImage(pic.getImage(), width, height);
+			display.setSize(width, height);
+
+			BufferedImage painted 	= new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g 			= painted.createGraphics();
+			display.paintComponent(g);
+			g.dispose();
+
+			BufferedImage expected 	= new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			g = expected.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, zoom < 1 ?
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+			g.drawImage(pic.getImage(), 0, 0, width, height, null);
+			g.dispose();
+			// Smoothing may round differently where tiles meet, by one at most.
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int want 	= expected.getRGB(x, y);
+					int got 	= painted.getRGB(x, y);
+					assertTrue(Math.abs(Pixel.getRed(want) - Pixel.getRed(got)) <= 1);
+					assertTrue(Math.abs(Pixel.getGreen(want) - Pixel.getGreen(got)) <= 1);
+					assertTrue(Math.abs(Pixel.getBlue(want) - Pixel.getBlue(got)) <= 1);
+				}
+			}
+
+			int columns 	= (width + ImageDisplay.TILE_SIZE - 1) / ImageDisplay.TILE_SIZE;
+			int rows 		= (height + ImageDisplay.TILE_SIZE - 1) / ImageDisplay.TILE_SIZE;
+			assertEquals(columns * rows, display.getCachedTileCount());
+
+			display.repaintImage(new Rectangle(0, 0, 1, 1));
+			assertEquals(columns * rows - 1, display.getCachedTileCount());
+			display.setImage(pic.getImage(), width, height);
+			assertEquals(0, display.getCachedTileCount());
+		}
+	}
+	
+	/**
+	 * Test that the edit history undoes and redoes edits kept as operations,
+	 * 	as tiles from before the edit, and as tiles from before and after
+	 * 	it, including tiles moved to a file, and that it keeps only the
+	 * 	newest edits.
+	 */
+	public void testEditHistory() throws Exception
+	{
+		File directory 		= Files.createTempDirectory("history").toFile();
+		EditHistory history = new EditHistory(3, 0, directory);
+		Picture original 	= Picture.loadPicture("Creek.bmp");
+
+		Picture filled 		= original.paintBucket(10, 10, 30, new Color(0, 0, 255));
+		Rectangle fillRegion = filled.takeDirtyRegion();
+		assertNotNull(history.record("fill", original, filled, fillRegion, null, null));
+		Picture gray 		= filled.grayscale();
+		history.record("gray", filled, gray, gray.takeDirtyRegion(), p -> p.grayscale(), null);
+		Picture rotated 	= gray.rotate(1);
+		history.record("rotate", gray, rotated, rotated.takeDirtyRegion(), p -> p.rotate(1), p -> p.rotate(3));
+		assertNull(history.record("nothing", rotated, new Picture(rotated), null, null, null));
+
+		// With no memory budget, every tile is in the file.
+		assertEquals(0, history.getMemoryUsed());
+		assertTrue(history.getSpilledBytes() > 0);
+		assertEquals(3, history.getUndoCount());
+
+		Picture[] states 	= { original, filled, gray, rotated };
+		Picture current 	= rotated;
+		for (int i = 3; i > 0; i--) {
+			EditHistory.Edit edit = history.getUndoEdit();
+			current = edit.undo(current);
+			history.undone(edit);
+			assertTrue(states[i - 1].equals(current));
+		}
+		assertNull(history.getUndoEdit());
+
+		// Undoing the fill only marked the pixels it changed as dirty.
+		assertTrue(fillRegion.contains(current.takeDirtyRegion()));
+
+		for (int i = 1; i <= 3; i++) {
+			EditHistory.Edit edit = history.getRedoEdit();
+			current = edit.redo(current);
+			history.redone(edit);
+			assertTrue(states[i].equals(current));
+		}
+		assertNull(history.getRedoEdit());
+
+		// A new edit after undoing drops the edits undone.
+		EditHistory.Edit edit = history.getUndoEdit();
+		current 			= edit.undo(current);
+		history.undone(edit);
+		Picture negated 	= current.negate();
+		history.record("negate", current, negated, negated.takeDirtyRegion(), p -> p.negate(), p -> p.negate());
+		assertNull(history.getRedoEdit());
+		assertEquals(3, history.getUndoCount());
+
+		// Only the newest edits are kept.
+		history.record("lighten", negated, negated.lighten(10), new Rectangle(0, 0, 1, 1), p -> p.lighten(10), null);
+		assertEquals(3, history.getUndoCount());
+		assertEquals("lighten", history.getUndoEdit().getDescription());
+
+		// Tiles of dropped edits are reclaimed, so a long session does not
+		// grow the file.
+		Picture painted 	= negated;
+		Picture previous 	= null;
+		for (int i = 0; i < 20; i++) {
+			Picture next 	= painted.paintBucket(5 + 7 * i, 5 + 3 * i, 30, new Color(i * 12, 0, 255));
+			history.record("fill " + i, painted, next, next.takeDirtyRegion(), null, null);
+			previous 		= painted;
+			painted 		= next;
+			assertTrue(directory.listFiles()[0].length() <= 2 * history.getSpilledBytes());
+		}
+		assertTrue(previous.equals(history.getUndoEdit().undo(painted)));
+
+		history.clear();
+		assertEquals(0, history.getSpilledBytes());
+		assertEquals(0, directory.list().length);
+		directory.delete();
+	}
+	
+}
@@ -80,6 +80,16 @@ public class Pixel
 		return alpha;
 	}
 
+	/**
+	 * @param value A color value.
+	 * 
+	 * @return The alpha component of the provided color value.
+	 */
+	public static int getAlpha(int value) {
+		int alpha = extractEightBits(value, 24);
+		return alpha;
+	}
+
 	/**
 	 * @return The amount of red at this Pixel. The value varies
 	 * 	from 0 for none to 255 for maximum.
@@ -182,6 +192,23 @@ public class Pixel
 		updatePicture(this.getAlpha(), red, green, blue);
 	}
 
+	/**
+	 * Packs the color components provided into a single color value, in the
+	 * 	format used by SimplePicture.getBasicPixel. Each component is
+	 * 	corrected to be within 0 and 255 first.
+	 * 
+	 * @param alpha The alpha (transparency) component.
+	 * @param red The red component.
+	 * @param green The green component.
+	 * @param blue The blue component.
+	 * 
+	 * @return The packed color value.
+	 */
+	public static int makeColor(int alpha, int red, int green, int blue) {
+		return (correctValue(alpha) << 24) | (correctValue(red) << 16) |
+		(correctValue(green) << 8) | correctValue(blue);
+	}
+
 	/**
 	 * Updates the picture based on the color values provided for
 	 * 	this Pixel.
@@ -222,7 +249,9 @@ public class Pixel
 		int red = correctValue(value);
 
 		// Update the pixel value in the picture.
-		updatePicture(getAlpha(), red, getGreen(), getBlue());
+		int current = picture.getBasicPixel(x, y);
+		updatePicture(getAlpha(current), red, getGreen(current),
+				getBlue(current));
 	} 
 
 	/**
@@ -235,7 +264,9 @@ public class Pixel
 		int green = correctValue(value);
 
 		// Update the pixel value in the picture.
-		updatePicture(getAlpha(), getRed(), green, getBlue());
+		int current = picture.getBasicPixel(x, y);
+		updatePicture(getAlpha(current), getRed(current), green,
+				getBlue(current));
 	} 
 
 	/**
@@ -248,7 +279,9 @@ public class Pixel
 		int blue = correctValue(value);
 
 		// Update the pixel value in the picture.
-		updatePicture(getAlpha(), getRed(), getGreen(), blue);
+		int current = picture.getBasicPixel(x, y);
+		updatePicture(getAlpha(current), getRed(current), getGreen(current),
+				blue);
 	} 
 
 	/**
@@ -261,7 +294,9 @@ public class Pixel
 		int alpha = correctValue(value);
 
 		// Update the associated picture.
-		updatePicture(alpha, getRed(), getGreen(), getBlue());
+		int current = picture.getBasicPixel(x, y);
+		updatePicture(alpha, getRed(current), getGreen(current),
+				getBlue(current));
 	} 
 
 	/**
@@ -300,12 +335,84 @@ public class Pixel
 		return distance;
 	}
 
+	/**
+	 * Computes the square of the color distance between two color values,
+	 * 	ignoring their alpha components. This avoids the square root taken by
+	 * 	colorDistance, and is exact.
+	 * 
+	 * @param value1 A color value.
+	 * @param value2 A color value.
+	 * 
+	 * @return The squared distance between the two colors.
+	 */
+	public static int colorDistanceSquared(int value1, int value2) {
+		int redDistance = getRed(value1) - getRed(value2);
+		int greenDistance = getGreen(value1) - getGreen(value2);
+		int blueDistance = getBlue(value1) - getBlue(value2);
+		return redDistance * redDistance + greenDistance * greenDistance +
+		blueDistance * blueDistance;
+	}
+
+	/**
+	 * Checks whether two color values are within a distance of each other,
+	 * 	that is, whether colorDistance between them is at most the
+	 * 	threshold. Only integer arithmetic is used.
+	 * 
+	 * @param value1 A color value.
+	 * @param value2 A color value.
+	 * @param threshold The largest distance allowed.
+	 * 
+	 * @return Whether the distance between the two colors is at most the
+	 * 	threshold.
+	 */
+	public static boolean isWithinDistance(int value1, int value2,
+			int threshold) {
+		if (threshold < 0) {
+			return false;
+		}
+		long limit = (long) threshold * threshold;
+		return colorDistanceSquared(value1, value2) <= limit;
+	}
+
+	/**
+	 * Checks whether two color values are within a distance of each other
+	 * 	once the distance is truncated to an int, that is, whether
+	 * 	(int) colorDistance between them is at most the threshold. Only
+	 * 	integer arithmetic is used.
+	 * 
+	 * @param value1 A color value.
+	 * @param value2 A color value.
+	 * @param threshold The largest truncated distance allowed.
+	 * 
+	 * @return Whether the truncated distance between the two colors is at
+	 * 	most the threshold.
+	 */
+	public static boolean isWithinTruncatedDistance(int value1, int value2,
+			int threshold) {
+		if (threshold < 0) {
+			return false;
+		}
+		// The distance truncates to at most threshold exactly when it is
+		// below threshold + 1.
+		long limit = ((long) threshold + 1) * ((long) threshold + 1);
+		return colorDistanceSquared(value1, value2) < limit;
+	}
+
 	/** 
 	 * @return The average of the red, green, and blue values of this Pixel.
 	 */
 	public int getAverage() {
-		double average = (getRed() + getGreen() + getBlue())/3.0;
-		return ((int) average);
+		return getAverage(picture.getBasicPixel(x, y));
+	}
+
+	/**
+	 * @param value A color value.
+	 * 
+	 * @return The average of the red, green, and blue components of the
+	 * 	provided color value.
+	 */
+	public static int getAverage(int value) {
+		return (getRed(value) + getGreen(value) + getBlue(value)) / 3;
 	}
 
 	/**
@@ -0,0 +1,181 @@
+/**
+ * The loops behind the point operations that have a fixed formula
+ * 	(grayscale, negate, and adding amounts to the color components), run
+ * 	over part of a packed raster of color values.
+ *
+ * 	Two backends exist. The scalar one, always available, handles one pixel
+ * 	at a time. The vector one, VectorPixelKernels in the vector directory,
+ * 	uses the incubating Java Vector API to handle as many pixels at once as
+ * 	the processor's SIMD registers hold. It is compiled and loaded only
+ * 	with the jdk.incubator.vector module, and used only when the
+ * 	picture.vector system property is "true":
+ *
+ * 	javac --add-modules jdk.incubator.vector -d bin *.java vector/*.java
+ * 	java --add-modules jdk.incubator.vector -Dpicture.vector=true -cp bin ...
+ *
+ * 	It is not the default because, until the JIT compiler has optimized
+ * 	its loops, every vector is an object on the heap, which makes the first
+ * 	pictures processed much slower than with the scalar backend. Long
+ * 	batches of large pictures gain the most from it.
+ *
+ * 	Both backends give the same results, bit for bit.
+ */
+public abstract class PixelKernels
+{
+
+	/**
+	 * An operation on part of a raster, changing it in place.
+	 */
+	public interface RasterOperation
+	{
+		/**
+		 * Changes the color values from index from (inclusive) to index to
+		 * 	(exclusive). This may be called from several threads at once, for
+		 * 	different, non-overlapping ranges.
+		 *
+		 * @param pixels The raster.
+		 * @param from The index of the first color value to change.
+		 * @param to The index after the last color value to change.
+		 */
+		void apply(int[] pixels, int from, int to);
+	}
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The name of the class of the vector backend. */
+	private static final String VECTOR_CLASS = "VectorPixelKernels";
+
+	/** The scalar backend. */
+	private static final PixelKernels SCALAR = new Scalar();
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * @return The backend used by Picture: the vector one if it is enabled
+	 * 	and available, and the scalar one otherwise.
+	 */
+	public static PixelKernels get() {
+		if (!Boolean.getBoolean("picture.vector"))
+			return SCALAR;
+		PixelKernels vector = vector();
+		return vector != null ? vector : SCALAR;
+	}
+
+	/**
+	 * @return The scalar backend.
+	 */
+	public static PixelKernels scalar() { return SCALAR; }
+
+	/**
+	 * @return The vector backend, or null if it was not compiled in, the
+	 * 	jdk.incubator.vector module is missing, or the processor has no SIMD
+	 * 	registers to speak of.
+	 */
+	public static PixelKernels vector() { return VectorHolder.VECTOR; }
+
+	/**
+	 * @return The name of this backend, such as "scalar".
+	 */
+	public abstract String getName();
+
+	/**
+	 * Converts color values to gray, as done by Picture.grayscale(). The
+	 * 	results have no alpha.
+	 *
+	 * @param pixels The raster.
+	 * @param from The index of the first color value to change.
+	 * @param to The index after the last color value to change.
+	 */
+	public abstract void gray(int[] pixels, int from, int to);
+
+	/**
+	 * Converts color values to their photonegative, as done by
+	 * 	Picture.negate(). The results have no alpha.
+	 *
+	 * @param pixels The raster.
+	 * @param from The index of the first color value to change.
+	 * @param to The index after the last color value to change.
+	 */
+	public abstract void negate(int[] pixels, int from, int to);
+
+	/**
+	 * Adds an amount to each color component, correcting the results to be
+	 * 	within 0 and 255, as done by Picture.lighten, darken, and the addX
+	 * 	methods. The results have no alpha.
+	 *
+	 * @param pixels The raster.
+	 * @param from The index of the first color value to change.
+	 * @param to The index after the last color value to change.
+	 * @param red The amount to add to the red component.
+	 * @param green The amount to add to the green component.
+	 * @param blue The amount to add to the blue component.
+	 */
+	public abstract void add(int[] pixels, int from, int to, int red,
+			int green, int blue);
+
+	public String toString() { return getName(); }
+
+	/**
+	 * @return The vector backend, or null if it cannot be loaded.
+	 */
+	private static PixelKernels loadVector() {
+		try {
+			return (PixelKernels) Class.forName(VECTOR_CLASS)
+			.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError |
+				UnsupportedOperationException ex) {
+			// Not compiled in, jdk.incubator.vector not added, or no SIMD.
+			return null;
+		}
+	}
+
+	/**
+	 * @return value corrected to be within 0 and 255.
+	 */
+	static int clamp(int value) {
+		return value < 0 ? 0 : value > 255 ? 255 : value;
+	}
+
+	////////////////////////////// Nested classes /////////////////////////////
+
+	/**
+	 * Loads the vector backend when it is first asked for.
+	 */
+	private static class VectorHolder
+	{
+		static final PixelKernels VECTOR = loadVector();
+	}
+
+	/**
+	 * The backend handling one pixel at a time.
+	 */
+	private static final class Scalar extends PixelKernels
+	{
+		public String getName() { return "scalar"; }
+
+		public void gray(int[] pixels, int from, int to) {
+			for (int i = from; i < to; i++)
+			{
+				int average = Pixel.getAverage(pixels[i]);
+				pixels[i] = average << 16 | average << 8 | average;
+			}
+		}
+
+		public void negate(int[] pixels, int from, int to) {
+			for (int i = from; i < to; i++)
+				pixels[i] = ~pixels[i] & 0x00ffffff;
+		}
+
+		public void add(int[] pixels, int from, int to, int red, int green,
+				int blue) {
+			for (int i = from; i < to; i++)
+			{
+				int value = pixels[i];
+				pixels[i] = clamp(Pixel.getRed(value) + red) << 16 |
+				clamp(Pixel.getGreen(value) + green) << 8 |
+				clamp(Pixel.getBlue(value) + blue);
+			}
+		}
+	}
+
+} // End of PixelKernels class.
@@ -0,0 +1,220 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A lazily evaluated chain of per-pixel color operations on a Picture. Each
+ * 	method records an operation and returns this pipeline, so calls can be
+ * 	chained; nothing is computed until run() is called. run() then visits
+ * 	every pixel of the source Picture once, applies all of the recorded
+ * 	operations to it in order, and writes the result to a single new
+ * 	Picture.
+ * 
+ * 	The result is the same as calling the corresponding Picture methods one
+ * 	after the other, but without allocating and copying an intermediate
+ * 	Picture for every step.
+ * 
+ * 	Operations that change each color component on its own (negate,
+ * 	lighten, darken, the addX methods, gamma, levels, and curve) are
+ * 	recorded as ChannelLuts, and consecutive ones are composed into one, so
+ * 	any run of them costs a single table lookup per component.
+ */
+public class PointOpPipeline
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The Picture the operations are applied to. */
+	private final Picture source;
+
+	/** The recorded operations, in the order they are to be applied. */
+	private final List<IntUnaryOperator> operations =
+		new ArrayList<IntUnaryOperator>();
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the Picture to read pixels from.
+	 * 
+	 * @param source The Picture the operations are applied to. It is never
+	 * 	modified.
+	 */
+	public PointOpPipeline(Picture source) {
+		this.source = source;
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * Records a conversion to grayscale, as done by Picture.grayscale().
+	 * 
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline grayscale() {
+		return then(value -> Picture.toGray(value));
+	}
+
+	/**
+	 * Records a conversion to the photonegative, as done by
+	 * 	Picture.negate().
+	 * 
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline negate() {
+		return channels(ChannelLut.negate());
+	}
+
+	/**
+	 * Records a lightening, as done by Picture.lighten(amount).
+	 * 
+	 * @param amount The amount to add to each color component.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline lighten(int amount) {
+		return channels(ChannelLut.add(amount, amount, amount));
+	}
+
+	/**
+	 * Records a darkening, as done by Picture.darken(amount).
+	 * 
+	 * @param amount The amount to subtract from each color component.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline darken(int amount) {
+		return channels(ChannelLut.add(-amount, -amount, -amount));
+	}
+
+	/**
+	 * Records an increase of the red component, as done by
+	 * 	Picture.addRed(amount).
+	 * 
+	 * @param amount The amount to add to the red component.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline addRed(int amount) {
+		return channels(ChannelLut.add(amount, 0, 0));
+	}
+
+	/**
+	 * Records an increase of the green component, as done by
+	 * 	Picture.addGreen(amount).
+	 * 
+	 * @param amount The amount to add to the green component.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline addGreen(int amount) {
+		return channels(ChannelLut.add(0, amount, 0));
+	}
+
+	/**
+	 * Records an increase of the blue component, as done by
+	 * 	Picture.addBlue(amount).
+	 * 
+	 * @param amount The amount to add to the blue component.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline addBlue(int amount) {
+		return channels(ChannelLut.add(0, 0, amount));
+	}
+
+	/**
+	 * Records a gamma correction, as done by ChannelLut.gamma(gamma).
+	 * 
+	 * @param gamma The gamma; above 1 lightens, below 1 darkens.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline gamma(double gamma) {
+		return channels(ChannelLut.gamma(gamma));
+	}
+
+	/**
+	 * Records a levels adjustment, as done by ChannelLut.levels.
+	 * 
+	 * @param inputBlack The component that becomes outputBlack.
+	 * @param inputWhite The component that becomes outputWhite.
+	 * @param gamma The gamma of the midtones.
+	 * @param outputBlack The darkest output component.
+	 * @param outputWhite The lightest output component.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline levels(int inputBlack, int inputWhite, double gamma,
+			int outputBlack, int outputWhite) {
+		return channels(ChannelLut.levels(inputBlack, inputWhite, gamma,
+				outputBlack, outputWhite));
+	}
+
+	/**
+	 * Records a curve through control points, as done by ChannelLut.curve.
+	 * 
+	 * @param inputs The components of the control points, increasing.
+	 * @param outputs What each of those components becomes.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline curve(int[] inputs, int[] outputs) {
+		return channels(ChannelLut.curve(inputs, outputs));
+	}
+
+	/**
+	 * Records a lookup table applied to each color component. If the
+	 * 	previous operation is also a lookup table, the two are composed.
+	 * 
+	 * @param lut The lookup table to apply.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline channels(ChannelLut lut) {
+		return then(lut);
+	}
+
+	/**
+	 * Records an operation supplied by the caller. The operation receives a
+	 * 	color value in the format returned by SimplePicture.getBasicPixel,
+	 * 	without the alpha component, and returns the new color value; any
+	 * 	alpha component it returns is ignored.
+	 * 
+	 * @param operation The operation to apply to every color value.
+	 * @return This pipeline.
+	 */
+	public PointOpPipeline then(IntUnaryOperator operation) {
+		if (operation == null)
+			throw new IllegalArgumentException("operation must not be null");
+
+		int last = operations.size() - 1;
+		if (operation instanceof ChannelLut && last >= 0 &&
+				operations.get(last) instanceof ChannelLut)
+			operations.set(last, ((ChannelLut) operations.get(last))
+					.then((ChannelLut) operation));
+		else
+			operations.add(operation);
+		return this;
+	}
+
+	/**
+	 * @return The number of operations applied to each pixel by run();
+	 * 	consecutive lookup tables count as one.
+	 */
+	public int size() { return operations.size(); }
+
+	/**
+	 * Applies every recorded operation, in order, to each pixel of the source
+	 * 	Picture in a single pass.
+	 * 
+	 * @return A new Picture holding the result. If no operations were
+	 * 	recorded, it is a copy of the source Picture.
+	 */
+	public Picture run() {
+		final IntUnaryOperator[] steps =
+			operations.toArray(new IntUnaryOperator[operations.size()]);
+
+		if (steps.length == 1 && steps[0] instanceof ChannelLut)
+			return source.applyLut((ChannelLut) steps[0]);
+		if (steps.length == 1)
+			return source.mapPixels(steps[0]);
+
+		return source.mapPixels(value -> {
+			for (IntUnaryOperator step : steps)
+				value = step.applyAsInt(value) & 0x00ffffff;
+			return value;
+		});
+	}
+
+} // End of PointOpPipeline class.
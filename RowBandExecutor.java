@@ -0,0 +1,264 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Runs a per-row computation over a picture in parallel. The rows are split
+ * 	into contiguous bands, and the bands are processed by the threads of a
+ * 	ForkJoinPool. Every band writes only its own rows of the result, so the
+ * 	output is the same, bit for bit, as processing all of the rows on one
+ * 	thread, regardless of how many threads are used.
+ * 
+ * 	Small pictures, and all pictures when the parallelism is 1, are
+ * 	processed on the calling thread.
+ * 
+ * 	Work started with runMonitored reports each band it finishes to a
+ * 	Monitor, which can also cancel it: the bands not yet started are then
+ * 	skipped, and forEachBand throws a CancellationException.
+ */
+public class RowBandExecutor
+{
+
+	/**
+	 * A computation over a band of rows.
+	 */
+	public interface BandTask
+	{
+		/**
+		 * Processes the rows from startY (inclusive) to endY (exclusive).
+		 * 	This may be called from several threads at once, for
+		 * 	different, non-overlapping bands.
+		 * 
+		 * @param startY The first row of the band.
+		 * @param endY One past the last row of the band.
+		 */
+		void processRows(int startY, int endY);
+	}
+
+	/**
+	 * Follows the progress of monitored work, and may cancel it.
+	 */
+	public interface Monitor
+	{
+		/**
+		 * Called when forEachBand starts to process a picture. One piece of
+		 * 	work may process several pictures, or the same one several
+		 * 	times.
+		 * 
+		 * @param height The number of rows to process.
+		 */
+		void rowsStarted(int height);
+
+		/**
+		 * Called when a band of rows has been processed. This may be called
+		 * 	from several threads at once.
+		 * 
+		 * @param rows The number of rows in the band.
+		 */
+		void rowsDone(int rows);
+
+		/**
+		 * @return Whether the work should stop. This is checked before each
+		 * 	band, from the threads processing them.
+		 */
+		boolean isCancelled();
+	}
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/**
+	 * Pictures with fewer pixels than this are not split at all, since
+	 * 	starting the other threads would cost more than it saves.
+	 */
+	private static final int MIN_PARALLEL_PIXELS = 64 * 1024;
+
+	/** The smallest number of pixels worth handing to a thread. */
+	private static final int MIN_BAND_PIXELS = 16 * 1024;
+
+	/** The number of threads to use. */
+	private static int parallelism =
+		Runtime.getRuntime().availableProcessors();
+
+	/** The pool running the bands; created when first needed. */
+	private static ForkJoinPool pool;
+
+	/** The Monitor of the work running on each thread, if any. */
+	private static final ThreadLocal<Monitor> MONITOR =
+		new ThreadLocal<Monitor>();
+
+	/////////////////////////////// Constructors //////////////////////////////
+
+	/**
+	 * This class only has static methods.
+	 */
+	private RowBandExecutor() { }
+
+	//////////////////////////////// Methods //////////////////////////////////
+
+	/**
+	 * @return The number of threads used to process a picture.
+	 */
+	public static synchronized int getParallelism() { return parallelism; }
+
+	/**
+	 * Sets the number of threads used to process a picture. A value of 1
+	 * 	processes every picture on the calling thread.
+	 * 
+	 * @param threads The number of threads to use; at least 1.
+	 */
+	public static synchronized void setParallelism(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("The parallelism must be at " +
+					"least 1, but was " + threads);
+
+		if (threads != parallelism)
+		{
+			// The old pool is not shut down, since another thread may have
+			// got it from getPool and not have invoked it yet. Its idle
+			// threads stop on their own once the work on it is done.
+			pool = null;
+		}
+		parallelism = threads;
+	}
+
+	/**
+	 * @return The pool to run bands on, or null if everything should run
+	 * 	on the calling thread.
+	 */
+	private static synchronized ForkJoinPool getPool() {
+		if (parallelism == 1)
+			return null;
+
+		if (pool == null)
+			pool = new ForkJoinPool(parallelism);
+		return pool;
+	}
+
+	/**
+	 * Runs work on the calling thread, reporting the bands of every
+	 * 	forEachBand it calls to a Monitor.
+	 * 
+	 * @param monitor The Monitor to report to.
+	 * @param work The work to run.
+	 * 
+	 * @return The result of the work.
+	 * 
+	 * @throws CancellationException If the Monitor cancelled the work.
+	 */
+	public static <T> T runMonitored(Monitor monitor, Supplier<T> work) {
+		Monitor outer = MONITOR.get();
+		MONITOR.set(monitor);
+		try {
+			return work.get();
+		} finally {
+			MONITOR.set(outer);
+		}
+	}
+
+	/**
+	 * Runs the task provided over all of the rows of a picture, and returns
+	 * 	once every row has been processed.
+	 * 
+	 * @param width The width of the picture, in pixels.
+	 * @param height The height of the picture, in pixels.
+	 * @param task The computation to run for each band.
+	 * 
+	 * @throws CancellationException If this runs within runMonitored, and
+	 * 	the Monitor cancelled the work.
+	 */
+	public static void forEachBand(int width, int height, BandTask task) {
+		long pixels = (long) width * height;
+		ForkJoinPool bandPool = (pixels < MIN_PARALLEL_PIXELS) ? null : getPool();
+		Monitor monitor = MONITOR.get();
+		int minRows = Math.max(1, MIN_BAND_PIXELS / Math.max(1, width));
+
+		if (monitor != null)
+		{
+			checkCancelled(monitor);
+			monitor.rowsStarted(height);
+		}
+
+		if (bandPool == null && monitor == null)
+		{
+			task.processRows(0, height);
+			return;
+		}
+		if (bandPool == null)
+		{
+			// Still split the rows, so that progress can be reported.
+			int bandRows = Math.max(minRows, (height + 15) / 16);
+			for (int startY = 0; startY < height; startY += bandRows)
+				processBand(task, monitor, startY,
+						Math.min(height, startY + bandRows));
+			return;
+		}
+
+		// Aim for a few bands per thread so that uneven bands even out.
+		int bands = bandPool.getParallelism() * 4;
+		int bandRows = Math.max(minRows, (height + bands - 1) / bands);
+
+		bandPool.invoke(new Band(task, monitor, 0, height, bandRows));
+	}
+
+	/**
+	 * Processes one band, reporting it to the Monitor if there is one.
+	 */
+	private static void processBand(BandTask task, Monitor monitor, int startY,
+			int endY) {
+		if (monitor == null)
+		{
+			task.processRows(startY, endY);
+			return;
+		}
+
+		checkCancelled(monitor);
+		task.processRows(startY, endY);
+		monitor.rowsDone(endY - startY);
+	}
+
+	/**
+	 * @throws CancellationException If the Monitor cancelled the work.
+	 */
+	private static void checkCancelled(Monitor monitor) {
+		if (monitor.isCancelled())
+			throw new CancellationException("The work was cancelled");
+	}
+
+	/**
+	 * A range of rows that splits itself in half until it is small enough to
+	 * 	process directly.
+	 */
+	private static class Band extends RecursiveAction
+	{
+		private static final long serialVersionUID = 0;
+
+		private final BandTask task;
+		private final Monitor monitor;
+		private final int startY;
+		private final int endY;
+		private final int bandRows;
+
+		Band(BandTask task, Monitor monitor, int startY, int endY,
+				int bandRows) {
+			this.task = task;
+			this.monitor = monitor;
+			this.startY = startY;
+			this.endY = endY;
+			this.bandRows = bandRows;
+		}
+
+		protected void compute() {
+			if (endY - startY <= bandRows)
+			{
+				processBand(task, monitor, startY, endY);
+				return;
+			}
+
+			int middleY = (startY + endY) >>> 1;
+			invokeAll(new Band(task, monitor, startY, middleY, bandRows),
+					new Band(task, monitor, middleY, endY, bandRows));
+		}
+	}
+
+} // End of RowBandExecutor class.
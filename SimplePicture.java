@@ -3,7 +3,9 @@ import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * A class that represents a simple picture. A simple picture may have an
@@ -11,6 +13,28 @@ import java.io.*;
  * 	height. A simple picture uses a BufferedImage to hold the pixels. You can
  * 	show a simple picture in a PictureFrame (a JFrame).
  * 
+ * 	The BufferedImage is always of type TYPE_INT_RGB, and its pixels are
+ * 	kept in a packed int array (the DataBufferInt behind the image) that is
+ * 	read and written directly, one int per pixel, in row-major order.
+ * 
+ * 	Every change to the pixels made through this class increments a
+ * 	modification count, which lets the 64-bit content hash of the pixels
+ * 	be computed once and reused until the next change. Handing out the
+ * 	raster, the BufferedImage, or a Graphics counts as a change, since the
+ * 	caller may write through them; code that only reads the pixels uses
+ * 	getRasterForReading() or getImage() instead. Since the caller of
+ * 	getBufferedImage(), getGraphics(), or createGraphics() may keep what it
+ * 	got and draw with it later, the content hash of such a picture is no
+ * 	longer cached from then on.
+ * 
+ * 	The changed pixels are also gathered into a dirty region, the smallest
+ * 	rectangle holding all of them, which a display takes with
+ * 	takeDirtyRegion() to repaint only that part of the picture. Single
+ * 	pixel writes only dirty their pixel; everything else dirties the whole
+ * 	picture. Like the rest of this class, this is not synchronized: the
+ * 	pixels must be changed and the region taken on the same thread, such
+ * 	as the event dispatch thread.
+ * 
  * @author Barb Ericson (ericson@cc.gatech.edu)
  * 	(Copyright Georgia Institute of Technology 2004)
  * @author Modified by Colleen Lewis (colleenl@berkeley.edu),
@@ -29,6 +53,16 @@ public class SimplePicture
 	 */
 	private static String projectName = " - Project: PiCTURE";
 
+	/**
+	 * Mask for the red, green, and blue components of a packed pixel.
+	 */
+	private static final int RGB_MASK = 0x00ffffff;
+
+	/**
+	 * Alpha component of a fully opaque packed pixel.
+	 */
+	private static final int OPAQUE = 0xff000000;
+
 	/**
 	 * Filename associated with this SimplePicture.
 	 */
@@ -44,6 +78,13 @@ public class SimplePicture
 	 */
 	private BufferedImage bufferedImage;
 
+	/**
+	 * Packed pixels of the BufferedImage, indexed by y * width + x. Each
+	 * 	int holds the red, green, and blue components in its lower 24 bits;
+	 * 	the upper 8 bits are always zero, since the image has no alpha.
+	 */
+	private int[] raster;
+
 	/**
 	 * PictureFrame used to display the SimplePicture.
 	 */
@@ -54,6 +95,38 @@ public class SimplePicture
 	 */
 	private String extension;
 
+	/**
+	 * Number of times the pixels may have been changed.
+	 */
+	private int modificationCount;
+
+	/**
+	 * Content hash of the pixels, valid if hashedModification is equal to
+	 * 	modificationCount. It is written before hashedModification, so a
+	 * 	thread that sees the new hashedModification sees the new hash.
+	 */
+	private volatile long contentHash;
+
+	/**
+	 * Modification count at which contentHash was computed, or -1.
+	 */
+	private volatile int hashedModification = -1;
+
+	/**
+	 * Whether the BufferedImage, or a Graphics drawing on it, was handed
+	 * 	out. The caller may write through it at any time without the
+	 * 	modification count changing, so contentHash is not trusted.
+	 */
+	private volatile boolean writableViewShared;
+
+	/**
+	 * Bounds of the pixels changed since the dirty region was last taken:
+	 * 	from dirtyLeft and dirtyTop (inclusive) to dirtyRight and
+	 * 	dirtyBottom (exclusive). The region is empty if dirtyRight is not
+	 * 	greater than dirtyLeft.
+	 */
+	private int dirtyLeft, dirtyTop, dirtyRight, dirtyBottom;
+
 	/////////////////////////////// Constructors //////////////////////////////
 
 	/**
@@ -88,8 +161,8 @@ public class SimplePicture
 	 * @param height The desired height.
 	 */
 	public SimplePicture(int width, int height) {
-		bufferedImage = new BufferedImage(width, height,
-				BufferedImage.TYPE_INT_RGB);
+		setBufferedImage(new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB));
 		title = "No current picture" + projectName;
 		fileName = "None";
 		extension = "jpg";
@@ -127,8 +200,8 @@ public class SimplePicture
 
 		if (copyPicture.bufferedImage != null)
 		{
-			this.bufferedImage = new BufferedImage(copyPicture.getWidth(),
-					copyPicture.getHeight(), BufferedImage.TYPE_INT_RGB);
+			setBufferedImage(new BufferedImage(copyPicture.getWidth(),
+					copyPicture.getHeight(), BufferedImage.TYPE_INT_RGB));
 			this.copyPicture(copyPicture);
 		}
 	}
@@ -147,24 +220,18 @@ public class SimplePicture
 	 * @param sourcePicture The SimplePicture object to copy.
 	 */
 	public void copyPicture(SimplePicture sourcePicture) {
-		Pixel sourcePixel = null;
-		Pixel targetPixel = null;
-
-		// Loop through the columns
-		for (int sourceX = 0, targetX = 0; 
-		sourceX < sourcePicture.getWidth() && targetX < this.getWidth();
-		sourceX++, targetX++) {
-			// Loop through the rows
-			for (int sourceY = 0, targetY = 0; 
-			sourceY < sourcePicture.getHeight() && 
-			targetY < this.getHeight();
-			sourceY++, targetY++)
-			{
-				sourcePixel = sourcePicture.getPixel(sourceX, sourceY);
-				targetPixel = this.getPixel(targetX, targetY);
-				targetPixel.setColor(sourcePixel.getColor());
-			}
+		int sourceWidth = sourcePicture.getWidth();
+		int targetWidth = this.getWidth();
+		int copyWidth = Math.min(sourceWidth, targetWidth);
+		int copyHeight = Math.min(sourcePicture.getHeight(), this.getHeight());
+
+		// Copy the overlapping part of each row in one go.
+		for (int y = 0; y < copyHeight; y++)
+		{
+			System.arraycopy(sourcePicture.raster, y * sourceWidth,
+					raster, y * targetWidth, copyWidth);
 		}
+		markModified();
 	}
 
 	/**
@@ -173,36 +240,57 @@ public class SimplePicture
 	 * @param color The Color to set to.
 	 */
 	public void setAllPixelsToAColor(Color color) {
-		// Loop through all x.
-		for (int x = 0; x < this.getWidth(); x++)
-		{
-			// Loop through all y.
-			for (int y = 0; y < this.getHeight(); y++)
-			{
-				getPixel(x, y).setColor(color);
-			}
-		}
+		Arrays.fill(raster, color.getRGB() & RGB_MASK);
+		markModified();
 	}
 
 	/**
+	 * Returns the BufferedImage in this SimplePicture, which may be
+	 * 	written to. From then on, the content hash is computed again each
+	 * 	time it is needed. Use getImage() to only read the pixels.
+	 * 
 	 * @return The BufferedImage in this SimplePicture. 
 	 */
 	public BufferedImage getBufferedImage() {
+		markModified();
+		writableViewShared = true;
 		return bufferedImage;
 	}
 
 	/**
+	 * Returns a Graphics drawing on this SimplePicture. From then on, the
+	 * 	content hash is computed again each time it is needed.
+	 * 
 	 * @return A Graphics object to be used by this SimplePicture for drawing.
 	 */
 	public Graphics getGraphics() {
+		markModified();
+		writableViewShared = true;
 		return bufferedImage.getGraphics();
 	}
 
 	/**
+	 * Returns a Graphics2D drawing on this SimplePicture. From then on,
+	 * 	the content hash is computed again each time it is needed.
+	 * 
 	 *@return A Graphics2D object for this SimplePicture
 	 *	which can be used to do 2D drawing on the picture.
 	 */
 	public Graphics2D createGraphics() {
+		markModified();
+		writableViewShared = true;
+		return bufferedImage.createGraphics();
+	}
+
+	/**
+	 * Returns a Graphics2D for drawing on this SimplePicture within the
+	 * 	calling method only, which must not keep it. Unlike createGraphics(),
+	 * 	this keeps the content hash cached after the next change.
+	 * 
+	 * @return A Graphics2D drawing on the BufferedImage.
+	 */
+	private Graphics2D createPrivateGraphics() {
+		markModified();
 		return bufferedImage.createGraphics();
 	}
 
@@ -253,6 +341,12 @@ public class SimplePicture
 	}
 
 	/**
+	 * Returns the image of this SimplePicture, for displaying or otherwise
+	 * 	reading its pixels. It must not be drawn on or otherwise written,
+	 * 	since that would not be noticed: the content hash and the dirty
+	 * 	region would be stale. Use getBufferedImage() or createGraphics() to
+	 * 	write to it.
+	 * 
 	 * @return The Image associated with this SimplePicture.
 	 */
 	public Image getImage() {
@@ -268,7 +362,7 @@ public class SimplePicture
 	 * 	blue, each occupying 8 bits each.
 	 */
 	public int getBasicPixel(int x, int y) {
-		return bufferedImage.getRGB(x, y);
+		return raster[index(x, y)] | OPAQUE;
 	}
 
 	/** 
@@ -279,7 +373,281 @@ public class SimplePicture
 	 * @param rgb The new RGB value of the pixel (alpha, red, green, blue).
 	 */     
 	public void setBasicPixel(int x, int y, int rgb) {
-		bufferedImage.setRGB(x, y, rgb);
+		raster[index(x, y)] = rgb & RGB_MASK;
+		markModified(x, y, 1, 1);
+	}
+
+	/**
+	 * Copies every pixel of this SimplePicture into the array provided, in
+	 * 	row-major order: the pixel at (x, y) is stored at index
+	 * 	y * getWidth() + x. Each value has the same format as the value
+	 * 	returned by getBasicPixel.
+	 * 
+	 * @param pixels The array to fill, or null. If it is null or has
+	 * 	fewer than getWidth() * getHeight() elements, a new array is used.
+	 * 
+	 * @return The array holding the pixels.
+	 */
+	public int[] getPixels(int[] pixels) {
+		int count = raster.length;
+		if (pixels == null || pixels.length < count)
+			pixels = new int[count];
+
+		for (int i = 0; i < count; i++)
+			pixels[i] = raster[i] | OPAQUE;
+
+		return pixels;
+	}
+
+	/**
+	 * Sets every pixel of this SimplePicture from the array provided, which
+	 * 	is read in the same row-major order used by getPixels. The alpha
+	 * 	component of each value is ignored.
+	 * 
+	 * @param pixels The pixel values to use. It must have at least
+	 * 	getWidth() * getHeight() elements.
+	 */
+	public void setPixels(int[] pixels) {
+		int count = raster.length;
+		if (pixels.length < count)
+			throw new IllegalArgumentException("Expected " + count +
+					" pixels, but only " + pixels.length + " were given.");
+
+		for (int i = 0; i < count; i++)
+			raster[i] = pixels[i] & RGB_MASK;
+		markModified();
+	}
+
+	/**
+	 * Returns the packed pixels backing this SimplePicture. The array is
+	 * 	live: writing to it changes the picture. The pixel at (x, y) is at
+	 * 	index y * getWidth() + x, and holds its red, green, and blue
+	 * 	components in the lower 24 bits, with the upper 8 bits zero.
+	 * 
+	 * 	Since the caller may write to it, this counts as a change of the
+	 * 	pixels. The caller must not keep the array after it is done with
+	 * 	the current operation, because later writes would not be noticed:
+	 * 	in particular, a content hash computed in between would be stale,
+	 * 	and equals() could then fail for pictures with the same pixels.
+	 * 
+	 * @return The raster of this SimplePicture.
+	 */
+	protected int[] getRasterData() {
+		markModified();
+		return raster;
+	}
+
+	/**
+	 * Returns the packed pixels backing this SimplePicture, laid out as
+	 * 	for getRasterData(), for reading only. This does not count as a
+	 * 	change, so the content hash and anything else computed from the
+	 * 	pixels stay valid, and it may be called from several threads at
+	 * 	once while the pixels are not changed.
+	 * 
+	 * @return The raster of this SimplePicture, which must not be written.
+	 */
+	protected int[] getRasterForReading() {
+		return raster;
+	}
+
+	/**
+	 * @return The number of times the pixels of this SimplePicture may
+	 * 	have been changed. Anything computed from the pixels is still valid
+	 * 	if this has not changed since.
+	 */
+	public int getModificationCount() { return modificationCount; }
+
+	/**
+	 * Records that any of the pixels may have changed, so that the content
+	 * 	hash and anything else computed from them are computed again, and
+	 * 	the whole picture is dirty.
+	 */
+	protected void markModified() {
+		markModified(0, 0, getWidth(), getHeight());
+	}
+
+	/**
+	 * Records that the pixels of a rectangle may have changed, so that the
+	 * 	content hash and anything else computed from them are computed
+	 * 	again, and the rectangle is added to the dirty region.
+	 * 
+	 * @param x The x-coordinate of the left of the rectangle.
+	 * @param y The y-coordinate of the top of the rectangle.
+	 * @param width The width of the rectangle.
+	 * @param height The height of the rectangle.
+	 */
+	protected void markModified(int x, int y, int width, int height) {
+		modificationCount++;
+		if (width <= 0 || height <= 0)
+			return;
+
+		if (dirtyRight <= dirtyLeft)
+		{
+			dirtyLeft = x;
+			dirtyTop = y;
+			dirtyRight = x + width;
+			dirtyBottom = y + height;
+		}
+		else
+		{
+			dirtyLeft = Math.min(dirtyLeft, x);
+			dirtyTop = Math.min(dirtyTop, y);
+			dirtyRight = Math.max(dirtyRight, x + width);
+			dirtyBottom = Math.max(dirtyBottom, y + height);
+		}
+	}
+
+	/**
+	 * Returns the pixels changed since this was last called, and starts
+	 * 	gathering changes again from an empty region.
+	 * 
+	 * @return The smallest rectangle holding every pixel changed since the
+	 * 	last call (or since this SimplePicture was created), or null if no
+	 * 	pixel changed.
+	 */
+	public Rectangle takeDirtyRegion() {
+		if (dirtyRight <= dirtyLeft)
+			return null;
+
+		Rectangle region = new Rectangle(dirtyLeft, dirtyTop,
+				dirtyRight - dirtyLeft, dirtyBottom - dirtyTop);
+		dirtyRight = dirtyLeft;
+		return region;
+	}
+
+	/**
+	 * Copies a rectangle of pixels from another SimplePicture of the same
+	 * 	size, one row at a time, and marks only that rectangle as dirty.
+	 * 	This lets a displayed picture take the changes of an effect without
+	 * 	replacing and redrawing all of it.
+	 * 
+	 * @param source The SimplePicture to copy from; it must have the same
+	 * 	width and height as this one.
+	 * @param region The rectangle to copy. The part of it outside of the
+	 * 	picture is ignored.
+	 */
+	public void copyRegion(SimplePicture source, Rectangle region) {
+		int width = getWidth();
+		if (source.getWidth() != width || source.getHeight() != getHeight())
+			throw new IllegalArgumentException("Cannot copy between " +
+					"pictures of different sizes");
+
+		Rectangle clipped = region.intersection(
+				new Rectangle(0, 0, width, getHeight()));
+		if (clipped.isEmpty())
+			return;
+
+		for (int y = clipped.y; y < clipped.y + clipped.height; y++)
+		{
+			System.arraycopy(source.raster, y * width + clipped.x,
+					raster, y * width + clipped.x, clipped.width);
+		}
+		markModified(clipped.x, clipped.y, clipped.width, clipped.height);
+	}
+
+	/**
+	 * Returns the 64-bit xxHash of the pixels of this SimplePicture,
+	 * 	seeded with its width. It is computed once, and then reused until
+	 * 	the pixels change, unless a writable view of the pixels was handed
+	 * 	out, in which case it is computed every time.
+	 * 
+	 * @return The content hash of this SimplePicture.
+	 */
+	public long getContentHash() {
+		int modification = modificationCount;
+		if (hashedModification != modification || writableViewShared)
+		{
+			clearDrawnAlpha();
+			contentHash = XxHash64.hash(raster, 0, raster.length, getWidth());
+			hashedModification = modification;
+		}
+		return contentHash;
+	}
+
+	/**
+	 * Compares the pixels of this SimplePicture with those of another one.
+	 * 	If the content hashes of both are already known and differ, no
+	 * 	pixel is read; otherwise the rasters are compared directly. The
+	 * 	hashes are not trusted once a writable view of either picture was
+	 * 	handed out.
+	 * 
+	 * @param other The SimplePicture to compare with.
+	 * 
+	 * @return True if both have the same size and the same pixels.
+	 */
+	protected boolean hasSamePixels(SimplePicture other) {
+		if (other == this)
+			return true;
+		if (other.getWidth() != getWidth() || other.getHeight() != getHeight())
+			return false;
+		if (!writableViewShared && !other.writableViewShared &&
+				hashedModification == modificationCount &&
+				other.hashedModification == other.modificationCount &&
+				contentHash != other.contentHash)
+			return false;
+
+		clearDrawnAlpha();
+		other.clearDrawnAlpha();
+		return Arrays.equals(raster, other.raster);
+	}
+
+	/**
+	 * Clears the upper 8 bits of every pixel if a writable view of the
+	 * 	pixels was handed out: drawing through a Graphics sets them, and
+	 * 	the content hash and comparisons expect them to be zero.
+	 */
+	private void clearDrawnAlpha() {
+		if (!writableViewShared)
+			return;
+
+		for (int i = 0; i < raster.length; i++)
+			raster[i] &= RGB_MASK;
+	}
+
+	/**
+	 * @param x The x-coordinate of a pixel.
+	 * @param y The y-coordinate of a pixel.
+	 * 
+	 * @return The index of that pixel in the raster.
+	 */
+	private int index(int x, int y) {
+		if (x < 0 || x >= getWidth() || y < 0 || y >= getHeight())
+			throw new ArrayIndexOutOfBoundsException("Coordinate out of " +
+					"bounds: (" + x + ", " + y + ")");
+
+		return y * getWidth() + x;
+	}
+
+	/**
+	 * Makes the BufferedImage provided the image of this SimplePicture,
+	 * 	converting it to TYPE_INT_RGB first if necessary, and keeps a
+	 * 	reference to its pixels.
+	 * 
+	 * @param image The image to use.
+	 */
+	private void setBufferedImage(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_INT_RGB)
+		{
+			int width = image.getWidth();
+			int height = image.getHeight();
+			BufferedImage converted = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_RGB);
+			int[] convertedRaster = ((DataBufferInt)
+					converted.getRaster().getDataBuffer()).getData();
+
+			/* getRGB converts from the color model of the image; the
+			 * alpha component is dropped, as copyPicture does. */
+			image.getRGB(0, 0, width, height, convertedRaster, 0, width);
+			for (int i = 0; i < convertedRaster.length; i++)
+				convertedRaster[i] &= RGB_MASK;
+
+			image = converted;
+		}
+
+		bufferedImage = image;
+		raster = ((DataBufferInt)
+				image.getRaster().getDataBuffer()).getData();
+		markModified();
 	}
 
 	/**
@@ -302,7 +670,7 @@ public class SimplePicture
 	 */
 	public void load(Image image) {
 		// Get a Graphics context to use to draw on the BufferedImage.
-		Graphics2D graphics2d = bufferedImage.createGraphics();
+		Graphics2D graphics2d = createPrivateGraphics();
 
 		/* Draw the Image on the BufferedImage
 		 * starting at (0,0). */
@@ -375,8 +743,9 @@ public class SimplePicture
 		this.fileName = fileName;
 
 		// Set the extension.
-		int posDot = fileName.indexOf('.');
-		if (posDot >= 0)
+		int posDot = fileName.lastIndexOf('.');
+		if (posDot > fileName.lastIndexOf('/') &&
+				posDot > fileName.lastIndexOf(File.separatorChar))
 			this.extension = fileName.substring(posDot + 1);
 
 		// If the current title is null, use the file name.
@@ -390,7 +759,16 @@ public class SimplePicture
 					" could not be opened. " +
 			"Check to see that you can read to the directory.");
 
-		bufferedImage = ImageIO.read(file);
+		/* Uncompressed BMP files are mapped into memory and converted
+		 * directly; anything else is decoded by ImageIO. */
+		BufferedImage image = BmpCodec.readMapped(file);
+		if (image == null)
+			image = ImageIO.read(file);
+		if (image == null)
+			throw new IOException(this.fileName +
+					" is not in a supported image format.");
+
+		setBufferedImage(image);
 	}
 
 	/**
@@ -435,7 +813,7 @@ public class SimplePicture
 	 */
 	public void addMessage(String message, int xPos, int yPos) {
 		// Get a graphics context to use to draw on the BufferedImage.
-		Graphics2D graphics2d = bufferedImage.createGraphics();
+		Graphics2D graphics2d = createPrivateGraphics();
 
 		// Set the color to white.
 		graphics2d.setPaint(Color.white);
@@ -479,8 +857,7 @@ public class SimplePicture
 					(int) (getHeight() * yFactor));
 
 		// Get the Graphics2D object to draw on the result.
-		Graphics graphics = result.getGraphics();
-		Graphics2D g2 = (Graphics2D) graphics;
+		Graphics2D g2 = result.createPrivateGraphics();
 
 		// Draw the current Image onto the result image.
 		g2.drawImage(this.getImage(), scaleTransform, null);
@@ -529,8 +906,9 @@ public class SimplePicture
 		}
 
 		// Get the extension.
-		int posDot = fileName.indexOf('.');
-		if (posDot >= 0)
+		int posDot = fileName.lastIndexOf('.');
+		if (posDot > fileName.lastIndexOf('/') &&
+				posDot > fileName.lastIndexOf(File.separatorChar))
 			extension = fileName.substring(posDot + 1);
 
 		/* Write the contents of the BufferedImage to the file
@@ -1,5 +1,11 @@
 import static org.junit.Assert.*;
 
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
 import org.junit.Test;
 
 
@@ -10,4 +16,61 @@ public class SimplePictureTest {
 		fail("Not yet implemented");
 	}
 
+	@Test
+	public void testGetPixelsMatchesBasicPixels() {
+		SimplePicture pic = new SimplePicture("Creek.bmp");
+		int width = pic.getWidth();
+		int[] pixels = pic.getPixels(null);
+		assertEquals(width * pic.getHeight(), pixels.length);
+		for (int y = 0; y < pic.getHeight(); y++) {
+			for (int x = 0; x < width; x++) {
+				assertEquals(pic.getBasicPixel(x, y), pixels[y * width + x]);
+			}
+		}
+	}
+
+	@Test
+	public void testSetPixelsRoundTrip() {
+		SimplePicture pic = new SimplePicture(3, 2);
+		int[] pixels = { 0xff000000, 0xffff0000, 0xff00ff00,
+				0xff0000ff, 0x12345678, 0xffffffff };
+		pic.setPixels(pixels);
+		assertEquals(new Color(0, 0, 255), pic.getPixel(0, 1).getColor());
+		assertEquals(0xff345678, pic.getBasicPixel(1, 1));
+		int[] copy = pic.getPixels(new int[6]);
+		assertEquals(0xff345678, copy[4]);
+		assertEquals(0xffff0000, copy[1]);
+	}
+
+	@Test
+	public void testCopyKeepsPixels() {
+		SimplePicture pic = new SimplePicture(4, 4, Color.red);
+		pic.setBasicPixel(3, 2, 0x00abcdef);
+		SimplePicture copy = new SimplePicture(pic);
+		assertEquals(0xffabcdef, copy.getBasicPixel(3, 2));
+		assertEquals(Color.red.getRGB(), copy.getBasicPixel(0, 0));
+	}
+
+	@Test
+	public void testMappedBmpMatchesImageIO() throws Exception {
+		String[] names = { "CalOriginal.bmp", "Colleen.bmp", "Gray.bmp",
+				"mickey.bmp", "space.bmp", "hash.bmp" };
+		for (String name : names) {
+			File file = new File(name);
+			BufferedImage expected = ImageIO.read(file);
+			BufferedImage mapped = BmpCodec.readMapped(file);
+			assertEquals(BufferedImage.TYPE_INT_RGB, mapped.getType());
+			assertEquals(expected.getWidth(), mapped.getWidth());
+			assertEquals(expected.getHeight(), mapped.getHeight());
+			for (int y = 0; y < expected.getHeight(); y++) {
+				for (int x = 0; x < expected.getWidth(); x++) {
+					assertEquals(expected.getRGB(x, y), mapped.getRGB(x, y));
+				}
+			}
+		}
+		// Not really a BMP file, so it is left to ImageIO.
+		assertNull(BmpCodec.readMapped(new File("Creek.bmp")));
+		assertEquals(640, new SimplePicture("Creek.bmp").getWidth());
+	}
+
 }
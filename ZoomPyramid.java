@@ -0,0 +1,209 @@
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A mipmap pyramid of a SimplePicture, for showing it zoomed out. Level 0 is
+ * 	the image of the picture itself; each following level is half as wide
+ * 	and half as high as the one before, every pixel being the average of a
+ * 	2 by 2 block of it. A zoomed view draws the smallest level that is at
+ * 	least as large as the view, so it is never scaled down by more than
+ * 	half, and a zoomed-in view draws level 0.
+ *
+ * 	Levels are built the first time they are asked for, and the most
+ * 	recently used ones are kept, up to a limit. They are all dropped when
+ * 	the modification count of the picture changes, so they always match
+ * 	its pixels.
+ */
+public class ZoomPyramid
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The number of levels kept by default, beyond level 0. */
+	public static final int DEFAULT_CACHED_LEVELS = 4;
+
+	/** The picture the levels are built from. */
+	private final SimplePicture picture;
+
+	/** The levels built, from least to most recently used. */
+	private final LinkedHashMap<Integer, SimplePicture> levels;
+
+	/** The modification count of the picture when the levels were built. */
+	private int builtAt;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * Creates a pyramid keeping DEFAULT_CACHED_LEVELS levels.
+	 *
+	 * @param picture The picture to build the levels from.
+	 */
+	public ZoomPyramid(SimplePicture picture) {
+		this(picture, DEFAULT_CACHED_LEVELS);
+	}
+
+	/**
+	 * Creates a pyramid.
+	 *
+	 * @param picture The picture to build the levels from.
+	 * @param cachedLevels The number of levels kept, beyond level 0, which
+	 * 	is always the image of the picture; at least 1.
+	 */
+	public ZoomPyramid(SimplePicture picture, final int cachedLevels) {
+		if (cachedLevels < 1)
+			throw new IllegalArgumentException("At least one level must be " +
+					"kept, but " + cachedLevels + " were asked for");
+
+		this.picture = picture;
+		this.builtAt = picture.getModificationCount();
+		this.levels = new LinkedHashMap<Integer, SimplePicture>(16, 0.75f,
+				true) {
+			private static final long serialVersionUID = 0;
+
+			protected boolean removeEldestEntry(
+					Map.Entry<Integer, SimplePicture> eldest) {
+				return size() > cachedLevels;
+			}
+		};
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * @return The picture the levels are built from.
+	 */
+	public SimplePicture getPicture() { return picture; }
+
+	/**
+	 * Chooses the level to draw a zoomed view from: the smallest one that
+	 * 	is at least as large as the view.
+	 *
+	 * @param zoom The zoom factor of the view, such as 0.25 for 25%.
+	 *
+	 * @return The level, 0 for zoom factors of 0.5 and above.
+	 */
+	public int levelFor(double zoom) {
+		double viewWidth = picture.getWidth() * zoom;
+		double viewHeight = picture.getHeight() * zoom;
+		int width = picture.getWidth();
+		int height = picture.getHeight();
+		int level = 0;
+
+		while (width > 1 && height > 1 && (width + 1) / 2 >= viewWidth &&
+				(height + 1) / 2 >= viewHeight)
+		{
+			width = (width + 1) / 2;
+			height = (height + 1) / 2;
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Returns a level of the pyramid, building it and the levels before it
+	 * 	if they are not kept.
+	 *
+	 * @param level The level, 0 for the image of the picture.
+	 *
+	 * @return The image of the level.
+	 */
+	public synchronized BufferedImage getLevel(int level) {
+		if (level < 0)
+			throw new IllegalArgumentException("Invalid level: " + level);
+		if (picture.getModificationCount() != builtAt)
+		{
+			levels.clear();
+			builtAt = picture.getModificationCount();
+		}
+		return (BufferedImage) getLevelPicture(level).getImage();
+	}
+
+	/**
+	 * Returns a level of the pyramid as a picture, building it and the
+	 * 	levels before it if they are not kept.
+	 *
+	 * @param level The level, 0 for the picture itself.
+	 *
+	 * @return The picture of the level.
+	 */
+	private SimplePicture getLevelPicture(int level) {
+		if (level == 0)
+			return picture;
+
+		SimplePicture levelPicture = levels.get(level);
+		if (levelPicture == null)
+		{
+			levelPicture = halve(getLevelPicture(level - 1));
+			levels.put(level, levelPicture);
+		}
+		return levelPicture;
+	}
+
+	/**
+	 * @param zoom The zoom factor of the view.
+	 *
+	 * @return The image to draw the zoomed view from, as chosen by
+	 * 	levelFor.
+	 */
+	public BufferedImage getImageFor(double zoom) {
+		return getLevel(levelFor(zoom));
+	}
+
+	/**
+	 * @return The number of levels kept, beyond level 0.
+	 */
+	public synchronized int getCachedLevelCount() { return levels.size(); }
+
+	/**
+	 * Builds the next level of a picture: half as wide and half as high,
+	 * 	rounding up, each pixel the rounded average of a 2 by 2 block. The
+	 * 	last column and row of a picture of odd size are averaged with
+	 * 	themselves.
+	 *
+	 * @param level The picture of a level, which is only read.
+	 *
+	 * @return The next level.
+	 */
+	static SimplePicture halve(SimplePicture level) {
+		final int width = level.getWidth();
+		final int height = level.getHeight();
+		final int halfWidth = (width + 1) / 2;
+		final int halfHeight = (height + 1) / 2;
+		final int[] source = level.getRasterForReading();
+		SimplePicture result = new SimplePicture(halfWidth, halfHeight);
+		final int[] target = result.getRasterData();
+
+		RowBandExecutor.forEachBand(halfWidth, halfHeight, (startY, endY) -> {
+			for (int y = startY; y < endY; y++)
+			{
+				int top = 2 * y * width;
+				int bottom = Math.min(2 * y + 1, height - 1) * width;
+				int row = y * halfWidth;
+				for (int x = 0; x < halfWidth; x++)
+				{
+					int left = 2 * x;
+					int right = Math.min(left + 1, width - 1);
+					target[row + x] = average(source[top + left],
+							source[top + right], source[bottom + left],
+							source[bottom + right]);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @return The rounded average of four color values, component by
+	 * 	component. Red and blue are summed together in two 16-bit lanes,
+	 * 	which cannot overflow for four values.
+	 */
+	private static int average(int a, int b, int c, int d) {
+		int redBlue = (a & 0xff00ff) + (b & 0xff00ff) + (c & 0xff00ff) +
+		(d & 0xff00ff) + 0x020002;
+		int green = (a & 0xff00) + (b & 0xff00) + (c & 0xff00) +
+		(d & 0xff00) + 0x0200;
+		return (redBlue >>> 2) & 0xff00ff | (green >>> 2) & 0xff00;
+	}
+
+} // End of ZoomPyramid class.
@@ -0,0 +1,213 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+import benchmarks.Workloads;
+
+/**
+ * The Picture operations measured by the benchmarks, run on synthetic
+ * 	pictures. It lives in the default package so that it can use Picture
+ * 	directly; the benchmarks find it through Workloads.load().
+ * 
+ * 	A synthetic picture is a red and green gradient over a checkerboard of
+ * 	64-pixel blue squares, with a little noise added. This gives
+ * 	showEdges, chromaKey and paintBucket both flat regions and edges to
+ * 	work on, at any size.
+ */
+public class PictureWorkloads implements Workloads
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** Threshold used by the operations that compare color distances. */
+	private static final int THRESHOLD = 30;
+
+	/** Amount used by the operations that shift colors. */
+	private static final int AMOUNT = 40;
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	public Supplier<Object> prepare(String operation, int width, int height) {
+		final Picture picture = synthetic(width, height, 1);
+		if (operation.indexOf(':') >= 0)
+			return kernel(operation, picture);
+
+		switch (operation) {
+		case "grayscale":
+			return () -> picture.grayscale();
+		case "negate":
+			return () -> picture.negate();
+		case "lighten":
+			return () -> picture.lighten(AMOUNT);
+		case "darken":
+			return () -> picture.darken(AMOUNT);
+		case "addRed":
+			return () -> picture.addRed(AMOUNT);
+		case "addGreen":
+			return () -> picture.addGreen(AMOUNT);
+		case "addBlue":
+			return () -> picture.addBlue(AMOUNT);
+		case "pointOps":
+			return () -> picture.pointOps().grayscale().lighten(AMOUNT)
+			.addBlue(AMOUNT).negate().run();
+		case "rotate1":
+			return () -> picture.rotate(1);
+		case "rotate2":
+			return () -> picture.rotate(2);
+		case "rotate3":
+			return () -> picture.rotate(3);
+		case "flipHorizontal":
+			return () -> picture.flip(Picture.HORIZONTAL);
+		case "flipVertical":
+			return () -> picture.flip(Picture.VERTICAL);
+		case "flipForwardDiagonal":
+			return () -> picture.flip(Picture.FORWARD_DIAGONAL);
+		case "flipBackwardDiagonal":
+			return () -> picture.flip(Picture.BACKWARD_DIAGONAL);
+		case "showEdges":
+			return () -> picture.showEdges(THRESHOLD);
+		case "blur1":
+			return () -> picture.blur(1);
+		case "blur4":
+			return () -> picture.blur(4);
+		case "blur16":
+			return () -> picture.blur(16);
+		case "chromaKey": {
+			final Picture background = synthetic(width, height, 2);
+			return () -> picture.chromaKey(0, 0, background, THRESHOLD);
+		}
+		case "paintBucket":
+			return () -> picture.paintBucket(width / 2, height / 2,
+					THRESHOLD, Color.green);
+		case "convertToAscii":
+			return () -> picture.convertToAscii();
+		case "equals": {
+			final Picture copy = new Picture(picture);
+			return () -> picture.equals(copy);
+		}
+		case "load": {
+			final String fileName = temporaryFile();
+			picture.write(fileName);
+			return () -> new Picture(fileName);
+		}
+		case "write": {
+			final String fileName = temporaryFile();
+			return () -> picture.write(fileName);
+		}
+		case "rowMajorScan":
+			return () -> rowMajorSum(picture);
+		case "columnMajorScan":
+			return () -> columnMajorSum(picture);
+		default:
+			throw new IllegalArgumentException("Unknown operation: " +
+					operation);
+		}
+	}
+
+	/**
+	 * Prepares a PixelKernels loop over the whole raster of a picture, on
+	 * 	the calling thread.
+	 * 
+	 * @param operation The backend and the kernel, such as "vector:gray".
+	 * @param picture The picture whose raster is changed in place; each
+	 * 	kernel does the same work whatever the values it is given.
+	 * 
+	 * @return A supplier that runs the kernel once and returns the raster.
+	 */
+	private static Supplier<Object> kernel(String operation, Picture picture) {
+		String[] parts = operation.split(":");
+		final PixelKernels kernels = "vector".equals(parts[0]) ?
+				PixelKernels.vector() : PixelKernels.scalar();
+		if (kernels == null)
+			throw new IllegalStateException("The vector backend is not " +
+					"available; run with --add-modules jdk.incubator.vector");
+
+		final int[] pixels = picture.getRasterData();
+		switch (parts[1]) {
+		case "gray":
+			return () -> { kernels.gray(pixels, 0, pixels.length); return pixels; };
+		case "negate":
+			return () -> { kernels.negate(pixels, 0, pixels.length); return pixels; };
+		case "add":
+			return () -> {
+				kernels.add(pixels, 0, pixels.length, AMOUNT, -AMOUNT, AMOUNT);
+				return pixels;
+			};
+		default:
+			throw new IllegalArgumentException("Unknown operation: " +
+					operation);
+		}
+	}
+
+	/**
+	 * Builds a synthetic picture.
+	 * 
+	 * @param width The width of the picture.
+	 * @param height The height of the picture.
+	 * @param seed The seed of the noise, so that different seeds give
+	 * 	slightly different pictures.
+	 * 
+	 * @return The synthetic picture.
+	 */
+	private static Picture synthetic(int width, int height, long seed) {
+		int[] pixels = new int[width * height];
+		long noise = seed * 0x9E3779B97F4A7C15L;
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				noise ^= noise << 13;
+				noise ^= noise >>> 7;
+				noise ^= noise << 17;
+				int jitter = (int) (noise & 7);
+
+				int red = (int) ((long) x * 247 / width) + jitter;
+				int green = (int) ((long) y * 247 / height) + jitter;
+				int blue = (((x >> 6) + (y >> 6)) & 1) * 160 + jitter;
+				pixels[y * width + x] = Pixel.makeColor(255, red, green, blue);
+			}
+		}
+
+		Picture picture = new Picture(width, height);
+		picture.setPixels(pixels);
+		return picture;
+	}
+
+	/**
+	 * @return The name of a new temporary BMP file, removed when the
+	 * 	benchmark exits.
+	 */
+	private static String temporaryFile() {
+		try {
+			File file = File.createTempFile("picture-benchmark", ".bmp");
+			file.deleteOnExit();
+			return file.getAbsolutePath();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/** Sums every pixel of a picture, one row at a time. */
+	private static long rowMajorSum(Picture picture) {
+		long sum = 0;
+		for (int y = 0; y < picture.getHeight(); y++) {
+			for (int x = 0; x < picture.getWidth(); x++) {
+				sum += picture.getBasicPixel(x, y);
+			}
+		}
+		return sum;
+	}
+
+	/** Sums every pixel of a picture, one column at a time. */
+	private static long columnMajorSum(Picture picture) {
+		long sum = 0;
+		for (int x = 0; x < picture.getWidth(); x++) {
+			for (int y = 0; y < picture.getHeight(); y++) {
+				sum += picture.getBasicPixel(x, y);
+			}
+		}
+		return sum;
+	}
+
+} // End of PictureWorkloads class.
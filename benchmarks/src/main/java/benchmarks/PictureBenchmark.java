@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of every Picture operation on synthetic pictures
+ * 	from VGA up to 8K.
+ * 
+ * 	The picture sizes are multiples of the 10 by 20 ASCII glyphs, so
+ * 	convertToAscii always works on whole cells.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms6g", "-Xmx6g" })
+public class PictureBenchmark
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	@Param({ "640x480", "1920x1080", "3840x2160", "7680x4320" })
+	public String size;
+
+	@Param({ "grayscale", "negate", "lighten", "darken", "addRed",
+		"addGreen", "addBlue", "pointOps", "rotate1", "rotate2", "rotate3",
+		"flipHorizontal", "flipVertical", "flipForwardDiagonal",
+		"flipBackwardDiagonal", "showEdges", "blur1", "blur4", "blur16",
+		"chromaKey", "paintBucket", "convertToAscii", "equals", "load",
+		"write" })
+	public String operation;
+
+	/** Runs the operation being measured once. */
+	private Supplier<Object> workload;
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	@Setup
+	public void prepare() {
+		int[] dimensions = Workloads.parseSize(size);
+		workload = Workloads.load().prepare(operation, dimensions[0],
+				dimensions[1]);
+	}
+
+	@Benchmark
+	public Object run() {
+		return workload.get();
+	}
+
+} // End of PictureBenchmark class.
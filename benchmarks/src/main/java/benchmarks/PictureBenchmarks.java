@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. It accepts the usual JMH command line
+ * 	and always adds the GC profiler, so every result reports the
+ * 	allocation rate (gc.alloc.rate.norm is the bytes allocated per
+ * 	operation) next to the throughput.
+ * 
+ * 	Examples, from the repository root:
+ * 
+ * 	java -jar benchmarks/target/benchmarks.jar
+ * 	java -jar benchmarks/target/benchmarks.jar -l
+ * 	java -jar benchmarks/target/benchmarks.jar PictureBenchmark -p size=640x480
+ * 	java -jar benchmarks/target/benchmarks.jar Traversal -prof perfnorm
+ */
+public class PictureBenchmarks
+{
+
+	public static void main(String[] args)
+	throws CommandLineOptionException, RunnerException, IOException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		// Listing and help do not run anything, as with the JMH main class.
+		if (commandLine.shouldHelp())
+		{
+			commandLine.showHelp();
+			return;
+		}
+		if (commandLine.shouldList())
+		{
+			new Runner(commandLine).list();
+			return;
+		}
+		if (commandLine.shouldListWithParams())
+		{
+			new Runner(commandLine).listWithParams(commandLine);
+			return;
+		}
+
+		Options options = new OptionsBuilder()
+		.parent(commandLine)
+		.addProfiler(GCProfiler.class)
+		.build();
+		new Runner(options).run();
+	}
+
+} // End of PictureBenchmarks class.
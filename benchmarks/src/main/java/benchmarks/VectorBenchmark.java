@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar and vector backends of PixelKernels on the raster of
+ * 	a 4K and an 8K picture, on a single thread, so that the difference is
+ * 	the one made by SIMD alone.
+ * 
+ * 	Example, from the repository root once the module is packaged:
+ * 
+ * 	java -jar benchmarks/target/benchmarks.jar VectorBenchmark -p size=3840x2160 -bm avgt -tu ms
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g",
+		"--add-modules=jdk.incubator.vector" })
+public class VectorBenchmark
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	@Param({ "3840x2160", "7680x4320" })
+	public String size;
+
+	@Param({ "gray", "negate", "add" })
+	public String kernel;
+
+	@Param({ "scalar", "vector" })
+	public String backend;
+
+	/** Runs the kernel being measured once. */
+	private Supplier<Object> workload;
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	@Setup
+	public void prepare() {
+		int[] dimensions = Workloads.parseSize(size);
+		workload = Workloads.load().prepare(backend + ":" + kernel,
+				dimensions[0], dimensions[1]);
+	}
+
+	@Benchmark
+	public Object run() {
+		return workload.get();
+	}
+
+} // End of VectorBenchmark class.
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.util.function.Supplier;
+
+/**
+ * Prepares the picture operations measured by the benchmarks.
+ * 
+ * 	The Picture classes are in the default package, which code in a named
+ * 	package cannot refer to, and JMH does not allow benchmarks in the
+ * 	default package. The default-package PictureWorkloads class implements
+ * 	this interface and is looked up by name, so each benchmark invocation
+ * 	costs one interface call on top of the operation itself.
+ */
+public interface Workloads
+{
+
+	/**
+	 * Prepares an operation on a synthetic picture. Everything the
+	 * 	operation needs (the source picture, a background, a file to load)
+	 * 	is built here, so that only the operation itself is measured.
+	 * 
+	 * @param operation The name of the operation, as listed in
+	 * 	PictureBenchmark, or a backend and a kernel of PixelKernels, as
+	 * 	in VectorBenchmark.
+	 * @param width The width of the synthetic picture.
+	 * @param height The height of the synthetic picture.
+	 * 
+	 * @return A supplier that runs the operation once and returns its
+	 * 	result.
+	 * 
+	 * @throws IllegalArgumentException If the operation is unknown.
+	 */
+	Supplier<Object> prepare(String operation, int width, int height);
+
+	/**
+	 * @return The Workloads implementation for the Picture classes.
+	 */
+	static Workloads load() {
+		try {
+			return (Workloads) Class.forName("PictureWorkloads")
+			.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException ex) {
+			throw new IllegalStateException(
+					"PictureWorkloads is not on the class path", ex);
+		}
+	}
+
+	/**
+	 * Parses a picture size of the form "widthxheight".
+	 * 
+	 * @param size The size to parse, such as "1920x1080".
+	 * 
+	 * @return The width and the height.
+	 */
+	static int[] parseSize(String size) {
+		int separator = size.indexOf('x');
+		return new int[] { Integer.parseInt(size.substring(0, separator)),
+				Integer.parseInt(size.substring(separator + 1)) };
+	}
+
+} // End of Workloads interface.
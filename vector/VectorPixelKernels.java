@@ -0,0 +1,101 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The vector backend of PixelKernels, using the incubating Java Vector API.
+ * 	Each loop handles as many packed color values at once as the preferred
+ * 	vector shape holds (8 with AVX2, 16 with AVX-512), splitting them into
+ * 	components with shifts and masks, and finishes the remaining values of
+ * 	the range with the scalar backend.
+ *
+ * 	This class is in the default package, like the rest of the Picture
+ * 	classes, but lives in its own directory because it only compiles with
+ * 	"--add-modules jdk.incubator.vector". PixelKernels loads it by name.
+ */
+public final class VectorPixelKernels extends PixelKernels
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The shape of the vectors used. */
+	private static final VectorSpecies<Integer> SPECIES =
+		IntVector.SPECIES_PREFERRED;
+
+	/**
+	 * For a sum of three components, from 0 to 765, (sum * THIRD) >>> 17
+	 * 	is sum / 3, without the division that vectors lack.
+	 */
+	private static final int THIRD = 43691;
+
+	/** The scalar backend, for the ends of ranges. */
+	private final PixelKernels scalar = PixelKernels.scalar();
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * Creates the vector backend.
+	 *
+	 * @throws UnsupportedOperationException If the vectors of this processor
+	 * 	hold fewer than four color values, which would be slower than the
+	 * 	scalar backend.
+	 */
+	public VectorPixelKernels() {
+		if (VectorShape.preferredShape().vectorBitSize() < 128)
+			throw new UnsupportedOperationException("No SIMD registers");
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	public String getName() { return "vector" + SPECIES.length(); }
+
+	public void gray(int[] pixels, int from, int to) {
+		int i = from;
+		int bound = from + SPECIES.loopBound(to - from);
+
+		for (; i < bound; i += SPECIES.length())
+		{
+			IntVector value = IntVector.fromArray(SPECIES, pixels, i);
+			IntVector sum = value.lanewise(VectorOperators.LSHR, 16).and(0xff)
+			.add(value.lanewise(VectorOperators.LSHR, 8).and(0xff))
+			.add(value.and(0xff));
+			IntVector average = sum.mul(THIRD).lanewise(VectorOperators.LSHR, 17);
+			average.mul(0x010101).intoArray(pixels, i);
+		}
+		scalar.gray(pixels, i, to);
+	}
+
+	public void negate(int[] pixels, int from, int to) {
+		int i = from;
+		int bound = from + SPECIES.loopBound(to - from);
+
+		for (; i < bound; i += SPECIES.length())
+		{
+			IntVector.fromArray(SPECIES, pixels, i).not().and(0x00ffffff)
+			.intoArray(pixels, i);
+		}
+		scalar.negate(pixels, i, to);
+	}
+
+	public void add(int[] pixels, int from, int to, int red, int green,
+			int blue) {
+		int i = from;
+		int bound = from + SPECIES.loopBound(to - from);
+
+		for (; i < bound; i += SPECIES.length())
+		{
+			IntVector value = IntVector.fromArray(SPECIES, pixels, i);
+			IntVector newRed = value.lanewise(VectorOperators.LSHR, 16)
+			.and(0xff).add(red).max(0).min(255);
+			IntVector newGreen = value.lanewise(VectorOperators.LSHR, 8)
+			.and(0xff).add(green).max(0).min(255);
+			IntVector newBlue = value.and(0xff).add(blue).max(0).min(255);
+			newRed.lanewise(VectorOperators.LSHL, 16)
+			.or(newGreen.lanewise(VectorOperators.LSHL, 8)).or(newBlue)
+			.intoArray(pixels, i);
+		}
+		scalar.add(pixels, i, to, red, green, blue);
+	}
+
+} // End of VectorPixelKernels class.